@@ -0,0 +1,89 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.sql2o.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.sql2o.Connection;
+import org.sql2o.Sql2o;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Issues the same aggregate query against every configured datasource in parallel with {@code withAllSql2o},
+ * waiting for all of them either without a limit or within a timeout.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class FanOutBenchmark {
+    private static final String COUNT = "SELECT COUNT(*) FROM people";
+    private static final Duration TIMEOUT = Duration.ofSeconds(10);
+
+    @Param({"1", "2", "4", "8"})
+    public int datasources;
+
+    private final Sql2oHandlerFixture fixture = new Sql2oHandlerFixture();
+
+    @Setup(Level.Trial)
+    public void setup() {
+        fixture.open(datasources, 32, 100);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        fixture.close();
+    }
+
+    @Benchmark
+    public long fanOut() {
+        return total(fixture.getSql2oHandler().withAllSql2o(fixture.getDatasourceNames(), FanOutBenchmark::count));
+    }
+
+    @Benchmark
+    public long fanOutWithTimeout() {
+        return total(fixture.getSql2oHandler().withAllSql2o(fixture.getDatasourceNames(), TIMEOUT, FanOutBenchmark::count));
+    }
+
+    private static Integer count(String datasourceName, Sql2o sql2o) {
+        try (Connection connection = sql2o.open()) {
+            return connection.createQuery(COUNT).executeScalar(Integer.class);
+        }
+    }
+
+    private static long total(Map<String, Integer> counts) {
+        long total = 0;
+        for (Integer count : counts.values()) {
+            total += count;
+        }
+        return total;
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.sql2o.benchmarks;
+
+import griffon.plugins.sql2o.Sql2oCallback;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.sql2o.Sql2o;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost {@code withSql2o} adds on top of invoking a callback directly:
+ * datasource name validation, instance lookup in storage and callback dispatch.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class HandlerOverheadBenchmark {
+    private static final Sql2oCallback<Sql2o> IDENTITY = (datasourceName, sql2o) -> sql2o;
+
+    private final Sql2oHandlerFixture fixture = new Sql2oHandlerFixture();
+    private Sql2o sql2o;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        fixture.open(1, 8, 0);
+        sql2o = fixture.getSql2o(Sql2oHandlerFixture.DEFAULT);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        fixture.close();
+    }
+
+    @Benchmark
+    public Sql2o directCallback() {
+        return IDENTITY.handle(Sql2oHandlerFixture.DEFAULT, sql2o);
+    }
+
+    @Benchmark
+    public Sql2o withSql2oDefault() {
+        return fixture.getSql2oHandler().withSql2o(IDENTITY);
+    }
+
+    @Benchmark
+    public Sql2o withSql2oNamed() {
+        return fixture.getSql2oHandler().withSql2o(Sql2oHandlerFixture.DEFAULT, IDENTITY);
+    }
+
+    @Benchmark
+    public Sql2o withSql2oCapturingLambda() {
+        final String expected = Sql2oHandlerFixture.DEFAULT;
+        return fixture.getSql2oHandler().withSql2o(expected, (datasourceName, instance) -> expected.equals(datasourceName) ? instance : null);
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.sql2o.benchmarks;
+
+import griffon.annotations.core.Nonnull;
+import griffon.plugins.sql2o.Sql2oFactory;
+import org.h2.jdbcx.JdbcConnectionPool;
+import org.sql2o.Connection;
+import org.sql2o.Sql2o;
+import org.sql2o.quirks.NoQuirks;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A {@code Sql2oFactory} backed by in-memory H2 databases that does not require a running
+ * Griffon application. Every datasource gets its own connection pool and a {@code people} table.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public class InMemorySql2oFactory implements Sql2oFactory {
+    private static final String SCHEMA = "CREATE TABLE IF NOT EXISTS people (" +
+        "id INTEGER NOT NULL PRIMARY KEY, name VARCHAR(30) NOT NULL, lastname VARCHAR(30) NOT NULL)";
+
+    private final Set<String> datasourceNames = new LinkedHashSet<>();
+    private final Map<Sql2o, JdbcConnectionPool> pools = new ConcurrentHashMap<>();
+    private final int maxConnections;
+
+    public InMemorySql2oFactory(@Nonnull Set<String> datasourceNames, int maxConnections) {
+        this.datasourceNames.addAll(requireNonNull(datasourceNames, "Argument 'datasourceNames' must not be null"));
+        this.maxConnections = maxConnections;
+    }
+
+    @Nonnull
+    @Override
+    public Set<String> getDatasourceNames() {
+        return Collections.unmodifiableSet(datasourceNames);
+    }
+
+    @Nonnull
+    @Override
+    public Map<String, Object> getConfigurationFor(@Nonnull String datasourceName) {
+        Map<String, Object> config = new LinkedHashMap<>();
+        config.put("url", url(datasourceName));
+        config.put("maxConnections", maxConnections);
+        return config;
+    }
+
+    @Nonnull
+    @Override
+    public Sql2o create(@Nonnull String name) {
+        if (!datasourceNames.contains(name)) {
+            throw new IllegalArgumentException("Invalid datasource '" + name + "'");
+        }
+
+        JdbcConnectionPool pool = JdbcConnectionPool.create(url(name), "sa", "");
+        pool.setMaxConnections(maxConnections);
+
+        Sql2o sql2o = new Sql2o(pool, new NoQuirks());
+        pools.put(sql2o, pool);
+        try (Connection connection = sql2o.open()) {
+            connection.createQuery(SCHEMA).executeUpdate();
+        }
+        return sql2o;
+    }
+
+    @Nonnull
+    @Override
+    public Sql2o createReplacement(@Nonnull String datasourceName) {
+        // every instance gets its own pool already
+        return create(datasourceName);
+    }
+
+    @Override
+    public void destroy(@Nonnull String name, @Nonnull Sql2o instance) {
+        JdbcConnectionPool pool = pools.remove(instance);
+        if (pool != null) {
+            pool.dispose();
+        }
+    }
+
+    @Nonnull
+    private static String url(@Nonnull String datasourceName) {
+        // keep the database alive between connections, the pool may drop to zero open connections
+        return "jdbc:h2:mem:sql2o-benchmark-" + datasourceName + ";DB_CLOSE_DELAY=-1";
+    }
+}
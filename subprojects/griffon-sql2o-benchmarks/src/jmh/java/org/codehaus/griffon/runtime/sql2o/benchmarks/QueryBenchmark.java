@@ -0,0 +1,118 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.sql2o.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.sql2o.Connection;
+import org.sql2o.Query;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs real statements through {@code withSql2o}: a single row lookup by primary key and
+ * a batched insert executed in one transaction.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class QueryBenchmark {
+    private static final String SELECT_BY_ID = "SELECT id, name, lastname FROM people WHERE id = :id";
+    private static final String INSERT = "INSERT INTO people(id, name, lastname) VALUES (:id, :name, :lastname)";
+
+    @Param({"1000"})
+    public int rows;
+
+    private final Sql2oHandlerFixture fixture = new Sql2oHandlerFixture();
+    private final AtomicLong nextId = new AtomicLong();
+
+    @Setup(Level.Trial)
+    public void setup() {
+        fixture.open(1, 32, rows);
+    }
+
+    @Setup(Level.Iteration)
+    public void resetIds() {
+        // rows inserted by bulkInsert live above the seeded range and are wiped between iterations
+        fixture.getSql2oHandler().withSql2o((datasourceName, sql2o) -> {
+            try (Connection connection = sql2o.open()) {
+                return connection.createQuery("DELETE FROM people WHERE id >= :id")
+                    .addParameter("id", rows)
+                    .executeUpdate()
+                    .getResult();
+            }
+        });
+        nextId.set(rows);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        fixture.close();
+    }
+
+    @Benchmark
+    public Person selectById() {
+        final int id = ThreadLocalRandom.current().nextInt(rows);
+        return fixture.getSql2oHandler().withSql2o((datasourceName, sql2o) -> {
+            try (Connection connection = sql2o.open()) {
+                return connection.createQuery(SELECT_BY_ID)
+                    .addParameter("id", id)
+                    .executeAndFetchFirst(Person.class);
+            }
+        });
+    }
+
+    @Benchmark
+    public int[] bulkInsert(Batch batch) {
+        final int batchSize = batch.size;
+        final long first = nextId.getAndAdd(batchSize);
+        return fixture.getSql2oHandler().withSql2o((datasourceName, sql2o) -> {
+            try (Connection connection = sql2o.beginTransaction()) {
+                Query query = connection.createQuery(INSERT);
+                for (long id = first; id < first + batchSize; id++) {
+                    query.addParameter("id", id)
+                        .addParameter("name", "name" + id)
+                        .addParameter("lastname", "lastname" + id)
+                        .addToBatch();
+                }
+                int[] counts = query.executeBatch().getBatchResult();
+                connection.commit();
+                return counts;
+            }
+        });
+    }
+
+    @State(Scope.Benchmark)
+    public static class Batch {
+        @Param({"100", "1000"})
+        public int size;
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.sql2o.benchmarks;
+
+import griffon.annotations.core.Nonnull;
+import griffon.plugins.sql2o.Sql2oHandler;
+import org.codehaus.griffon.runtime.sql2o.DefaultSql2oHandler;
+import org.codehaus.griffon.runtime.sql2o.DefaultSql2oStorage;
+import org.sql2o.Connection;
+import org.sql2o.Query;
+import org.sql2o.Sql2o;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Wires a {@code DefaultSql2oHandler} against in-memory datasources, mirroring the bindings
+ * set up by {@code Sql2oModule} without booting a Griffon application.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public class Sql2oHandlerFixture {
+    public static final String DEFAULT = "default";
+    private static final String INSERT = "INSERT INTO people(id, name, lastname) VALUES (:id, :name, :lastname)";
+
+    private InMemorySql2oFactory sql2oFactory;
+    private DefaultSql2oStorage sql2oStorage;
+    private Sql2oHandler sql2oHandler;
+
+    public void open(int datasources, int maxConnections, int rows) {
+        Set<String> names = new LinkedHashSet<>();
+        names.add(DEFAULT);
+        for (int i = 1; i < datasources; i++) {
+            names.add("shard" + i);
+        }
+
+        sql2oFactory = new InMemorySql2oFactory(names, maxConnections);
+        sql2oStorage = new DefaultSql2oStorage();
+        sql2oHandler = new DefaultSql2oHandler(sql2oFactory, sql2oStorage);
+
+        for (String name : names) {
+            sql2oHandler.withSql2o(name, (datasourceName, sql2o) -> {
+                seed(sql2o, rows);
+                return null;
+            });
+        }
+    }
+
+    public void close() {
+        for (String name : sql2oFactory.getDatasourceNames()) {
+            sql2oHandler.closeSql2o(name);
+        }
+    }
+
+    @Nonnull
+    public Sql2oHandler getSql2oHandler() {
+        return sql2oHandler;
+    }
+
+    @Nonnull
+    public Set<String> getDatasourceNames() {
+        return sql2oFactory.getDatasourceNames();
+    }
+
+    @Nonnull
+    public Sql2o getSql2o(@Nonnull String datasourceName) {
+        return sql2oStorage.get(datasourceName);
+    }
+
+    private static void seed(@Nonnull Sql2o sql2o, int rows) {
+        try (Connection connection = sql2o.beginTransaction()) {
+            connection.createQuery("DELETE FROM people").executeUpdate();
+            Query query = connection.createQuery(INSERT);
+            for (int id = 0; id < rows; id++) {
+                query.addParameter("id", id)
+                    .addParameter("name", "name" + id)
+                    .addParameter("lastname", "lastname" + id)
+                    .addToBatch();
+            }
+            query.executeBatch();
+            connection.commit();
+        }
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package griffon.plugins.sql2o;
+
+import griffon.annotations.core.Nonnull;
+import griffon.annotations.core.Nullable;
+import org.sql2o.Sql2oException;
+import org.sql2o.converters.Converter;
+import org.sql2o.converters.ConverterException;
+import org.sql2o.quirks.Quirks;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Base class for {@code Sql2oRowMapper} implementations. Primitives and strings are read with the matching
+ * {@code ResultSet} getter, every other type goes through the converter Sql2o would have used.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public abstract class AbstractSql2oRowMapper<T> implements Sql2oRowMapper<T> {
+    private final Class<T> type;
+    private final List<String> propertyNames;
+
+    protected AbstractSql2oRowMapper(@Nonnull Class<T> type, @Nonnull String... propertyNames) {
+        this.type = requireNonNull(type, "Argument 'type' must not be null");
+        this.propertyNames = Collections.unmodifiableList(Arrays.asList(requireNonNull(propertyNames, "Argument 'propertyNames' must not be null")));
+    }
+
+    @Nonnull
+    @Override
+    public Class<T> getType() {
+        return type;
+    }
+
+    @Nonnull
+    @Override
+    public List<String> getPropertyNames() {
+        return propertyNames;
+    }
+
+    protected static boolean getBoolean(@Nonnull ResultSet resultSet, int column) throws SQLException {
+        return resultSet.getBoolean(column);
+    }
+
+    protected static byte getByte(@Nonnull ResultSet resultSet, int column) throws SQLException {
+        return resultSet.getByte(column);
+    }
+
+    protected static short getShort(@Nonnull ResultSet resultSet, int column) throws SQLException {
+        return resultSet.getShort(column);
+    }
+
+    protected static int getInt(@Nonnull ResultSet resultSet, int column) throws SQLException {
+        return resultSet.getInt(column);
+    }
+
+    protected static long getLong(@Nonnull ResultSet resultSet, int column) throws SQLException {
+        return resultSet.getLong(column);
+    }
+
+    protected static float getFloat(@Nonnull ResultSet resultSet, int column) throws SQLException {
+        return resultSet.getFloat(column);
+    }
+
+    protected static double getDouble(@Nonnull ResultSet resultSet, int column) throws SQLException {
+        return resultSet.getDouble(column);
+    }
+
+    @Nullable
+    protected static String getString(@Nonnull ResultSet resultSet, int column) throws SQLException {
+        return resultSet.getString(column);
+    }
+
+    @Nullable
+    protected static <E> E getValue(@Nonnull ResultSet resultSet, int column, @Nonnull Class<E> valueType, @Nonnull Quirks quirks) throws SQLException {
+        Converter<E> converter = quirks.converterOf(valueType);
+        if (converter == null) {
+            throw new Sql2oException("No converter registered for " + valueType.getName());
+        }
+        try {
+            return converter.convert(quirks.getRSVal(resultSet, column));
+        } catch (ConverterException e) {
+            throw new Sql2oException("Error occurred while converting value from database to type " + valueType, e);
+        }
+    }
+}
@@ -0,0 +1,376 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package griffon.plugins.sql2o;
+
+import griffon.annotations.core.Nonnull;
+import griffon.annotations.core.Nullable;
+import org.sql2o.Query;
+import org.sql2o.ResultSetHandler;
+import org.sql2o.ResultSetHandlerFactory;
+import org.sql2o.ResultSetIterable;
+import org.sql2o.quirks.Quirks;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import static griffon.util.GriffonNameUtils.requireNonBlank;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A query result stored column by column in primitive arrays, so that the result retains a handful of arrays
+ * instead of one object per row and value. Reading still goes through the driver's {@code getString} and
+ * {@code getTimestamp}, which usually allocate a short-lived object per value; only the first occurrence of
+ * each distinct string is kept.
+ * <ul>
+ * <li>Integral columns, booleans (as 0 or 1) and decimals without fractional digits are {@link ColumnType#LONG}.</li>
+ * <li>Dates, times and timestamps are {@link ColumnType#LONG} too, holding milliseconds since the epoch.</li>
+ * <li>Other numbers are {@link ColumnType#DOUBLE}.</li>
+ * <li>Everything else is a dictionary encoded {@link ColumnType#STRING}: each row holds the code of its value in the
+ * column's dictionary, or {@code -1} for {@code null}.</li>
+ * </ul>
+ * Arrays are returned as is, without copying, and hold exactly {@code getRowCount()} elements. Don't modify them.
+ * Columns are looked up by label, ignoring case.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public final class Sql2oColumns {
+    public enum ColumnType {
+        LONG, DOUBLE, STRING
+    }
+
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final String ERROR_COLUMN_BLANK = "Argument 'column' must not be blank";
+
+    private final int rowCount;
+    private final List<String> columnNames;
+    private final Map<String, Column> columns = new HashMap<>();
+
+    private Sql2oColumns(int rowCount, @Nonnull List<Column> columns) {
+        this.rowCount = rowCount;
+        List<String> names = new ArrayList<>();
+        for (Column column : columns) {
+            names.add(column.name);
+            // duplicate labels resolve to the first column, like ResultSet.findColumn
+            this.columns.putIfAbsent(column.name.toLowerCase(), column);
+        }
+        this.columnNames = Collections.unmodifiableList(names);
+    }
+
+    /**
+     * Executes the query and reads every row into columns.
+     */
+    @Nonnull
+    public static Sql2oColumns fetch(@Nonnull Query query) {
+        requireNonNull(query, "Argument 'query' must not be null");
+        ColumnReader reader = new ColumnReader(query.getConnection().getSql2o().getQuirks());
+        try (ResultSetIterable<Boolean> rows = query.executeAndFetchLazy(reader)) {
+            Iterator<Boolean> iterator = rows.iterator();
+            while (iterator.hasNext()) {
+                iterator.next();
+            }
+        }
+        return reader.build();
+    }
+
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    @Nonnull
+    public List<String> getColumnNames() {
+        return columnNames;
+    }
+
+    @Nonnull
+    public ColumnType getColumnType(@Nonnull String column) {
+        return column(column).type;
+    }
+
+    @Nonnull
+    public long[] getLongs(@Nonnull String column) {
+        return ((LongColumn) column(column, ColumnType.LONG)).values;
+    }
+
+    @Nonnull
+    public double[] getDoubles(@Nonnull String column) {
+        return ((DoubleColumn) column(column, ColumnType.DOUBLE)).values;
+    }
+
+    /**
+     * @return the dictionary code of every row, {@code -1} where the value is {@code null}
+     */
+    @Nonnull
+    public int[] getCodes(@Nonnull String column) {
+        return ((StringColumn) column(column, ColumnType.STRING)).codes;
+    }
+
+    @Nonnull
+    public String[] getDictionary(@Nonnull String column) {
+        return ((StringColumn) column(column, ColumnType.STRING)).dictionary;
+    }
+
+    @Nullable
+    public String getString(@Nonnull String column, int row) {
+        StringColumn strings = (StringColumn) column(column, ColumnType.STRING);
+        int code = strings.codes[checkRow(row)];
+        return code < 0 ? null : strings.dictionary[code];
+    }
+
+    /**
+     * Numeric columns hold {@code 0} where the value is {@code null}, use this method to tell both apart.
+     */
+    public boolean isNull(@Nonnull String column, int row) {
+        Column target = column(column);
+        checkRow(row);
+        return target instanceof StringColumn ? ((StringColumn) target).codes[row] < 0 : target.nulls.get(row);
+    }
+
+    @Nonnull
+    private Column column(@Nonnull String column) {
+        requireNonBlank(column, ERROR_COLUMN_BLANK);
+        Column target = columns.get(column.toLowerCase());
+        if (target == null) {
+            throw new IllegalArgumentException("Unknown column '" + column + "', expected one of " + columnNames);
+        }
+        return target;
+    }
+
+    @Nonnull
+    private Column column(@Nonnull String column, @Nonnull ColumnType type) {
+        Column target = column(column);
+        if (target.type != type) {
+            throw new IllegalArgumentException("Column '" + column + "' holds " + target.type + " values, not " + type);
+        }
+        return target;
+    }
+
+    private int checkRow(int row) {
+        if (row < 0 || row >= rowCount) {
+            throw new IndexOutOfBoundsException("Row " + row + " is out of bounds, there are " + rowCount + " rows");
+        }
+        return row;
+    }
+
+    private static final class ColumnReader implements ResultSetHandlerFactory<Boolean> {
+        private final Quirks quirks;
+        private final List<Column> columns = new ArrayList<>();
+        private int rowCount;
+
+        private ColumnReader(@Nonnull Quirks quirks) {
+            this.quirks = quirks;
+        }
+
+        @Override
+        public ResultSetHandler<Boolean> newResultSetHandler(ResultSetMetaData metaData) throws SQLException {
+            columns.clear();
+            for (int i = 1; i <= metaData.getColumnCount(); i++) {
+                columns.add(newColumn(quirks.getColumnName(metaData, i), i, metaData));
+            }
+            return this::read;
+        }
+
+        @Nonnull
+        private Boolean read(@Nonnull ResultSet resultSet) throws SQLException {
+            for (Column column : columns) {
+                column.read(resultSet, rowCount);
+            }
+            rowCount++;
+            // a null row would end the iteration
+            return Boolean.TRUE;
+        }
+
+        @Nonnull
+        private Sql2oColumns build() {
+            for (Column column : columns) {
+                column.trim(rowCount);
+            }
+            return new Sql2oColumns(rowCount, columns);
+        }
+
+        @Nonnull
+        private static Column newColumn(@Nonnull String name, int index, @Nonnull ResultSetMetaData metaData) throws SQLException {
+            switch (metaData.getColumnType(index)) {
+                case Types.TINYINT:
+                case Types.SMALLINT:
+                case Types.INTEGER:
+                case Types.BIGINT:
+                    return new LongColumn(name, index, LongColumn.INTEGRAL);
+                case Types.BIT:
+                case Types.BOOLEAN:
+                    return new LongColumn(name, index, LongColumn.BOOLEAN);
+                case Types.DATE:
+                case Types.TIMESTAMP:
+                case Types.TIMESTAMP_WITH_TIMEZONE:
+                    return new LongColumn(name, index, LongColumn.TIMESTAMP);
+                case Types.TIME:
+                case Types.TIME_WITH_TIMEZONE:
+                    return new LongColumn(name, index, LongColumn.TIME);
+                case Types.DECIMAL:
+                case Types.NUMERIC:
+                    int precision = metaData.getPrecision(index);
+                    if (metaData.getScale(index) == 0 && precision > 0 && precision < 19) {
+                        return new LongColumn(name, index, LongColumn.INTEGRAL);
+                    }
+                    return new DoubleColumn(name, index);
+                case Types.REAL:
+                case Types.FLOAT:
+                case Types.DOUBLE:
+                    return new DoubleColumn(name, index);
+                default:
+                    return new StringColumn(name, index);
+            }
+        }
+    }
+
+    private abstract static class Column {
+        private final String name;
+        private final ColumnType type;
+        protected final int index;
+        protected final BitSet nulls = new BitSet();
+
+        private Column(@Nonnull String name, @Nonnull ColumnType type, int index) {
+            this.name = name;
+            this.type = type;
+            this.index = index;
+        }
+
+        protected abstract void read(@Nonnull ResultSet resultSet, int row) throws SQLException;
+
+        protected abstract void trim(int rowCount);
+    }
+
+    private static final class LongColumn extends Column {
+        private static final int INTEGRAL = 0;
+        private static final int BOOLEAN = 1;
+        private static final int TIMESTAMP = 2;
+        private static final int TIME = 3;
+
+        private final int kind;
+        private long[] values = new long[INITIAL_CAPACITY];
+
+        private LongColumn(@Nonnull String name, int index, int kind) {
+            super(name, ColumnType.LONG, index);
+            this.kind = kind;
+        }
+
+        @Override
+        protected void read(@Nonnull ResultSet resultSet, int row) throws SQLException {
+            if (row == values.length) {
+                values = Arrays.copyOf(values, row * 2);
+            }
+            switch (kind) {
+                case BOOLEAN:
+                    values[row] = resultSet.getBoolean(index) ? 1L : 0L;
+                    break;
+                case TIMESTAMP:
+                    Timestamp timestamp = resultSet.getTimestamp(index);
+                    values[row] = timestamp != null ? timestamp.getTime() : 0L;
+                    break;
+                case TIME:
+                    Time time = resultSet.getTime(index);
+                    values[row] = time != null ? time.getTime() : 0L;
+                    break;
+                default:
+                    values[row] = resultSet.getLong(index);
+            }
+            if (resultSet.wasNull()) {
+                nulls.set(row);
+            }
+        }
+
+        @Override
+        protected void trim(int rowCount) {
+            values = Arrays.copyOf(values, rowCount);
+        }
+    }
+
+    private static final class DoubleColumn extends Column {
+        private double[] values = new double[INITIAL_CAPACITY];
+
+        private DoubleColumn(@Nonnull String name, int index) {
+            super(name, ColumnType.DOUBLE, index);
+        }
+
+        @Override
+        protected void read(@Nonnull ResultSet resultSet, int row) throws SQLException {
+            if (row == values.length) {
+                values = Arrays.copyOf(values, row * 2);
+            }
+            values[row] = resultSet.getDouble(index);
+            if (resultSet.wasNull()) {
+                nulls.set(row);
+            }
+        }
+
+        @Override
+        protected void trim(int rowCount) {
+            values = Arrays.copyOf(values, rowCount);
+        }
+    }
+
+    private static final class StringColumn extends Column {
+        private final Map<String, Integer> codesByValue = new HashMap<>();
+        private final List<String> values = new ArrayList<>();
+        private int[] codes = new int[INITIAL_CAPACITY];
+        private String[] dictionary;
+
+        private StringColumn(@Nonnull String name, int index) {
+            super(name, ColumnType.STRING, index);
+        }
+
+        @Override
+        protected void read(@Nonnull ResultSet resultSet, int row) throws SQLException {
+            if (row == codes.length) {
+                codes = Arrays.copyOf(codes, row * 2);
+            }
+            String value = resultSet.getString(index);
+            if (value == null) {
+                codes[row] = -1;
+                return;
+            }
+            Integer code = codesByValue.get(value);
+            if (code == null) {
+                code = values.size();
+                codesByValue.put(value, code);
+                values.add(value);
+            }
+            codes[row] = code;
+        }
+
+        @Override
+        protected void trim(int rowCount) {
+            codes = Arrays.copyOf(codes, rowCount);
+            dictionary = values.toArray(new String[0]);
+            codesByValue.clear();
+            values.clear();
+        }
+    }
+}
@@ -33,4 +33,17 @@ public interface Sql2oFactory extends ObjectFactory<Sql2o> {
 
     @Nonnull
     Map<String, Object> getConfigurationFor(@Nonnull String datasourceName);
+
+    /**
+     * Creates an instance backed by a new {@code DataSource} built from the datasource's current configuration.
+     * Instances created before keep their own {@code DataSource} until they are destroyed. The default
+     * implementation delegates to {@link #create(String)}, for factories that build a fresh {@code DataSource}
+     * on every call.
+     *
+     * @since 3.0.0
+     */
+    @Nonnull
+    default Sql2o createReplacement(@Nonnull String datasourceName) {
+        return create(datasourceName);
+    }
 }
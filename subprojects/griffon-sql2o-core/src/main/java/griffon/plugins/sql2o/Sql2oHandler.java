@@ -22,6 +22,13 @@ import griffon.plugins.sql2o.exceptions.RuntimeSql2oException;
 import griffon.annotations.core.Nonnull;
 import griffon.annotations.core.Nullable;
 
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
+
 /**
  * @author Andres Almiray
  */
@@ -35,8 +42,103 @@ public interface Sql2oHandler {
     <R> R withSql2o(@Nonnull String datasourceName, @Nonnull Sql2oCallback<R> callback)
         throws RuntimeSql2oException;
 
+    @Nullable
+    <R> R withSql2oReadOnly(@Nonnull Sql2oCallback<R> callback)
+        throws RuntimeSql2oException;
+
+    @Nullable
+    <R> R withSql2oReadOnly(@Nonnull String group, @Nonnull Sql2oCallback<R> callback)
+        throws RuntimeSql2oException;
+
+    @Nullable
+    <R> R withSql2oTransaction(@Nonnull Sql2oTransactionCallback<R> callback)
+        throws RuntimeSql2oException;
+
+    @Nullable
+    <R> R withSql2oTransaction(@Nonnull String datasourceName, @Nonnull Sql2oTransactionCallback<R> callback)
+        throws RuntimeSql2oException;
+
+    @Nullable
+    <R> R withSql2oTransaction(@Nonnull String datasourceName, int isolationLevel, @Nonnull Sql2oTransactionCallback<R> callback)
+        throws RuntimeSql2oException;
+
+    @Nonnull
+    <R> CompletableFuture<R> withSql2oAsync(@Nonnull Sql2oCallback<R> callback);
+
+    @Nonnull
+    <R> CompletableFuture<R> withSql2oAsync(@Nonnull String datasourceName, @Nonnull Sql2oCallback<R> callback);
+
+    @Nonnull
+    <R> Map<String, R> withAllSql2o(@Nonnull Collection<String> datasourceNames, @Nonnull Sql2oCallback<R> callback)
+        throws RuntimeSql2oException;
+
+    @Nonnull
+    <R> Map<String, R> withAllSql2o(@Nonnull Collection<String> datasourceNames, @Nonnull Duration timeout, @Nonnull Sql2oCallback<R> callback)
+        throws RuntimeSql2oException;
+
+    <T> long withSql2oBatch(@Nonnull String sql, @Nonnull Iterable<T> items, int batchSize)
+        throws RuntimeSql2oException;
+
+    <T> long withSql2oBatch(@Nonnull String datasourceName, @Nonnull String sql, @Nonnull Iterable<T> items, int batchSize)
+        throws RuntimeSql2oException;
+
+    <T> long withSql2oBatch(@Nonnull String sql, @Nonnull Stream<T> items, int batchSize)
+        throws RuntimeSql2oException;
+
+    <T> long withSql2oBatch(@Nonnull String datasourceName, @Nonnull String sql, @Nonnull Stream<T> items, int batchSize)
+        throws RuntimeSql2oException;
+
+    @Nonnull
+    <T> Stream<T> streamSql2o(@Nonnull String sql, @Nonnull Map<String, ?> params, @Nonnull Class<T> type)
+        throws RuntimeSql2oException;
+
+    @Nonnull
+    <T> Stream<T> streamSql2o(@Nonnull String datasourceName, @Nonnull String sql, @Nonnull Map<String, ?> params, @Nonnull Class<T> type)
+        throws RuntimeSql2oException;
+
+    @Nonnull
+    Sql2oColumns fetchColumns(@Nonnull String sql, @Nonnull Map<String, ?> params)
+        throws RuntimeSql2oException;
+
+    @Nonnull
+    Sql2oColumns fetchColumns(@Nonnull String datasourceName, @Nonnull String sql, @Nonnull Map<String, ?> params)
+        throws RuntimeSql2oException;
+
+    long bulkLoad(@Nonnull String table, @Nonnull List<String> columns, @Nonnull Stream<Object[]> rows)
+        throws RuntimeSql2oException;
+
+    long bulkLoad(@Nonnull String datasourceName, @Nonnull String table, @Nonnull List<String> columns, @Nonnull Stream<Object[]> rows)
+        throws RuntimeSql2oException;
+
+    /**
+     * Returns the rows of the query, served from the datasource's result cache while they are younger than
+     * {@code ttl}. The list and its rows are shared by every caller served from the same entry: the list can't
+     * be modified and the rows must be treated as read-only, since changing one changes it for the others.
+     */
+    @Nonnull
+    <T> List<T> withCachedQuery(@Nonnull String sql, @Nonnull Map<String, ?> params, @Nonnull Class<T> type, @Nonnull Duration ttl)
+        throws RuntimeSql2oException;
+
+    /**
+     * Like {@link #withCachedQuery(String, Map, Class, Duration)} on the given datasource. Rows are shared
+     * between callers and must be treated as read-only.
+     */
+    @Nonnull
+    <T> List<T> withCachedQuery(@Nonnull String datasourceName, @Nonnull String sql, @Nonnull Map<String, ?> params, @Nonnull Class<T> type, @Nonnull Duration ttl)
+        throws RuntimeSql2oException;
+
+    void invalidateCachedQueries(@Nonnull String table);
+
+    void invalidateCachedQueries(@Nonnull String datasourceName, @Nonnull String table);
+
     void closeSql2o();
 
     void closeSql2o(@Nonnull String datasourceName);
+
+    void reloadSql2o();
+
+    void reloadSql2o(@Nonnull String datasourceName);
+
+    void shutdownSql2o(@Nonnull Duration timeout);
     // end::methods[]
 }
\ No newline at end of file
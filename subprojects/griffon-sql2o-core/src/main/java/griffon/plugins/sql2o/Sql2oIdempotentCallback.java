@@ -0,0 +1,30 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package griffon.plugins.sql2o;
+
+/**
+ * Marks a callback that may safely run more than once. A plain {@code withSql2o} callback may have written and
+ * auto-committed rows before failing, so the datasource's {@code retry} policy only applies to callbacks that
+ * opt in by implementing this interface, besides {@code withSql2oTransaction} callbacks, whose failed attempts
+ * are rolled back.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public interface Sql2oIdempotentCallback<R> extends Sql2oCallback<R> {
+}
@@ -0,0 +1,156 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package griffon.plugins.sql2o;
+
+import griffon.annotations.core.Nonnull;
+import griffon.annotations.core.Nullable;
+import org.sql2o.Connection;
+import org.sql2o.DefaultResultSetHandlerFactoryBuilder;
+import org.sql2o.ResultSetHandler;
+import org.sql2o.ResultSetHandlerFactoryBuilder;
+import org.sql2o.Sql2o;
+import org.sql2o.Sql2oException;
+import org.sql2o.converters.Converter;
+import org.sql2o.converters.ConverterException;
+import org.sql2o.quirks.Quirks;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static griffon.util.GriffonNameUtils.requireNonBlank;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A query whose named parameters were resolved ahead of time, typically by the {@code @Sql2oQuery} AST
+ * transformation. The SQL holds plain {@code ?} placeholders and arguments are bound by position, so running
+ * it needs neither parsing the SQL nor looking up parameters by name. Rows are mapped like {@code Query}
+ * would, honoring the {@code Sql2o} instance's column mappings, case sensitivity and row mappers.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public final class Sql2oPreparedQuery {
+    private final String sql;
+    private final int parameterCount;
+
+    /**
+     * @param sql            the JDBC SQL, with one {@code ?} per argument
+     * @param parameterCount the number of arguments every execution must provide
+     */
+    public Sql2oPreparedQuery(@Nonnull String sql, int parameterCount) {
+        this.sql = requireNonBlank(sql, "Argument 'sql' must not be blank");
+        if (parameterCount < 0) {
+            throw new IllegalArgumentException("Argument 'parameterCount' must not be negative");
+        }
+        this.parameterCount = parameterCount;
+    }
+
+    @Nonnull
+    public String getSql() {
+        return sql;
+    }
+
+    public int getParameterCount() {
+        return parameterCount;
+    }
+
+    @Nonnull
+    public <T> List<T> fetch(@Nonnull Sql2oHandler handler, @Nonnull String datasourceName, @Nonnull Object[] args, @Nonnull Class<T> type) {
+        requireNonNull(handler, "Argument 'handler' must not be null");
+        checkArguments(args, type);
+        return handler.withSql2o(datasourceName, (name, sql2o) -> execute(sql2o, args, type, 0));
+    }
+
+    @Nullable
+    public <T> T fetchFirst(@Nonnull Sql2oHandler handler, @Nonnull String datasourceName, @Nonnull Object[] args, @Nonnull Class<T> type) {
+        requireNonNull(handler, "Argument 'handler' must not be null");
+        checkArguments(args, type);
+        List<T> rows = handler.withSql2o(datasourceName, (name, sql2o) -> execute(sql2o, args, type, 1));
+        return rows.isEmpty() ? null : rows.get(0);
+    }
+
+    @Nonnull
+    private <T> List<T> execute(@Nonnull Sql2o sql2o, @Nonnull Object[] args, @Nonnull Class<T> type, int maxRows) {
+        Quirks quirks = sql2o.getQuirks();
+        try (Connection connection = sql2o.open();
+             PreparedStatement statement = connection.getJdbcConnection().prepareStatement(sql)) {
+            for (int i = 0; i < args.length; i++) {
+                quirks.setParameter(statement, i + 1, toDatabaseParam(quirks, args[i]));
+            }
+            statement.setMaxRows(maxRows);
+
+            try (ResultSet resultSet = statement.executeQuery()) {
+                ResultSetHandler<T> handler = resultSetHandler(sql2o, type, resultSet);
+                List<T> rows = new ArrayList<>();
+                while (resultSet.next()) {
+                    rows.add(handler.handle(resultSet));
+                }
+                return rows;
+            }
+        } catch (SQLException e) {
+            throw new Sql2oException("Database error: " + e.getMessage() + " while executing " + sql, e);
+        }
+    }
+
+    @Nonnull
+    private static <T> ResultSetHandler<T> resultSetHandler(@Nonnull Sql2o sql2o, @Nonnull Class<T> type, @Nonnull ResultSet resultSet) throws SQLException {
+        Quirks quirks = sql2o.getQuirks();
+        Converter<T> converter = quirks.converterOf(type);
+        if (converter != null) {
+            // scalar types (numbers, strings, dates, enums...) are read from the first column, like executeScalar does
+            return rs -> {
+                try {
+                    return converter.convert(quirks.getRSVal(rs, 1));
+                } catch (ConverterException e) {
+                    throw new Sql2oException("Error occurred while converting value from database to type " + type, e);
+                }
+            };
+        }
+
+        Sql2oRowMappers rowMappers = Sql2oRowMappers.of(sql2o);
+        ResultSetHandlerFactoryBuilder builder = rowMappers != null ? rowMappers.newResultSetHandlerFactoryBuilder() : new DefaultResultSetHandlerFactoryBuilder();
+        builder.setQuirks(quirks);
+        builder.setCaseSensitive(sql2o.isDefaultCaseSensitive());
+        builder.setColumnMappings(sql2o.getDefaultColumnMappings());
+        return builder.newFactory(type).newResultSetHandler(resultSet.getMetaData());
+    }
+
+    /**
+     * Converts an argument the same way {@code Query.addParameter} does, so enums, dates and the like bind alike.
+     */
+    @SuppressWarnings("unchecked")
+    @Nullable
+    private static Object toDatabaseParam(@Nonnull Quirks quirks, @Nullable Object value) {
+        if (value == null) {
+            return null;
+        }
+        Converter<Object> converter = (Converter<Object>) quirks.converterOf(value.getClass());
+        return converter != null ? converter.toDatabaseParam(value) : value;
+    }
+
+    private void checkArguments(@Nonnull Object[] args, @Nonnull Class<?> type) {
+        requireNonNull(args, "Argument 'args' must not be null");
+        requireNonNull(type, "Argument 'type' must not be null");
+        if (args.length != parameterCount) {
+            throw new IllegalArgumentException("Expected " + parameterCount + " arguments but got " + args.length + " for " + sql);
+        }
+    }
+}
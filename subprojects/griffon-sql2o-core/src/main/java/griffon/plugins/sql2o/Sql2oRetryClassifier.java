@@ -0,0 +1,39 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package griffon.plugins.sql2o;
+
+import griffon.annotations.core.Nonnull;
+
+import java.sql.SQLException;
+
+/**
+ * Decides whether a failed callback may be run again. Set a datasource's {@code retry.classifier} to the
+ * name of an implementing class (with a public no-args constructor) to replace the dialect defaults.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public interface Sql2oRetryClassifier {
+    /**
+     * @param datasourceName the datasource the callback ran on
+     * @param exception      a {@code SQLException} found in the failure's cause chain
+     *
+     * @return {@code true} if the failure is transient and the callback may be retried
+     */
+    boolean isRetryable(@Nonnull String datasourceName, @Nonnull SQLException exception);
+}
@@ -0,0 +1,54 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package griffon.plugins.sql2o;
+
+import griffon.annotations.core.Nonnull;
+import org.sql2o.quirks.Quirks;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * Populates instances of a single type straight from a {@code ResultSet}, without the reflective setter lookups
+ * Sql2o performs for every column. Mappers are generated for classes annotated with {@code @Sql2oRowMapped}, or
+ * may be written by hand and added to {@code Sql2oRowMappers}.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public interface Sql2oRowMapper<T> {
+    @Nonnull
+    Class<T> getType();
+
+    /**
+     * @return the names of the properties this mapper can populate, in the order {@code map} expects their columns
+     */
+    @Nonnull
+    List<String> getPropertyNames();
+
+    /**
+     * Creates an instance from the current row.
+     *
+     * @param resultSet the result set, positioned on the row to read
+     * @param columns   the 1-based column index of each property, or {@code 0} if the query did not select it
+     * @param quirks    the quirks of the datasource, used to convert values of non-primitive types
+     */
+    @Nonnull
+    T map(@Nonnull ResultSet resultSet, @Nonnull int[] columns, @Nonnull Quirks quirks) throws SQLException;
+}
@@ -0,0 +1,194 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package griffon.plugins.sql2o;
+
+import griffon.annotations.core.Nonnull;
+import griffon.annotations.core.Nullable;
+import org.sql2o.DefaultResultSetHandlerFactoryBuilder;
+import org.sql2o.Query;
+import org.sql2o.ResultSetHandlerFactory;
+import org.sql2o.ResultSetHandlerFactoryBuilder;
+import org.sql2o.Sql2o;
+import org.sql2o.Sql2oException;
+import org.sql2o.quirks.Quirks;
+import org.sql2o.tools.UnderscoreToCamelCase;
+
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Registry of {@code Sql2oRowMapper} instances. Besides the mappers registered explicitly, a type resolves to the
+ * mapper {@code @Sql2oRowMapped} generated as its nested {@code Sql2oRowMapper} class, if any.
+ * <p>
+ * {@code Sql2oFactory} gives every datasource whose {@code rowMappers} setting is {@code true} quirks that
+ * implement {@code Sql2oRowMappers.Holder}, which lets {@code apply} find the registry from a {@code Query} alone. Types without a mapper,
+ * and queries mapping columns to nested properties, keep using Sql2o's reflective mapping.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public final class Sql2oRowMappers {
+    /**
+     * Simple name of the nested class generated by {@code @Sql2oRowMapped}.
+     */
+    public static final String GENERATED_MAPPER_NAME = "Sql2oRowMapper";
+
+    private static final ClassValue<Sql2oRowMapper<?>> GENERATED_MAPPERS = new ClassValue<Sql2oRowMapper<?>>() {
+        @Override
+        protected Sql2oRowMapper<?> computeValue(Class<?> type) {
+            try {
+                Class<?> mapperClass = Class.forName(type.getName() + "$" + GENERATED_MAPPER_NAME, true, type.getClassLoader());
+                return Sql2oRowMapper.class.isAssignableFrom(mapperClass) ? (Sql2oRowMapper<?>) mapperClass.newInstance() : null;
+            } catch (ClassNotFoundException | LinkageError e) {
+                return null;
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException("Can not instantiate the row mapper of " + type.getName(), e);
+            }
+        }
+    };
+
+    private final ConcurrentMap<Class<?>, Sql2oRowMapper<?>> mappers = new ConcurrentHashMap<>();
+
+    public <T> void register(@Nonnull Sql2oRowMapper<T> mapper) {
+        requireNonNull(mapper, "Argument 'mapper' must not be null");
+        mappers.put(mapper.getType(), mapper);
+    }
+
+    @Nullable
+    @SuppressWarnings("unchecked")
+    public <T> Sql2oRowMapper<T> findRowMapper(@Nonnull Class<T> type) {
+        requireNonNull(type, "Argument 'type' must not be null");
+        Sql2oRowMapper<?> mapper = mappers.get(type);
+        return (Sql2oRowMapper<T>) (mapper != null ? mapper : GENERATED_MAPPERS.get(type));
+    }
+
+    /**
+     * @return a builder that maps types with a registered mapper directly. Builders are mutated by every
+     * {@code Query} using them, create one per query.
+     */
+    @Nonnull
+    public ResultSetHandlerFactoryBuilder newResultSetHandlerFactoryBuilder() {
+        return new RowMapperResultSetHandlerFactoryBuilder();
+    }
+
+    /**
+     * @return the registry the quirks of the given instance were decorated with, if any
+     */
+    @Nullable
+    public static Sql2oRowMappers of(@Nonnull Sql2o sql2o) {
+        requireNonNull(sql2o, "Argument 'sql2o' must not be null");
+        Quirks quirks = sql2o.getQuirks();
+        return quirks instanceof Holder ? ((Holder) quirks).getRowMappers() : null;
+    }
+
+    /**
+     * Lets the query map rows with the registry of its datasource. Does nothing if the datasource has none.
+     *
+     * @return the given query
+     */
+    @Nonnull
+    public static Query apply(@Nonnull Query query) {
+        requireNonNull(query, "Argument 'query' must not be null");
+        Sql2oRowMappers rowMappers = of(query.getConnection().getSql2o());
+        if (rowMappers != null) {
+            query.setResultSetHandlerFactoryBuilder(rowMappers.newResultSetHandlerFactoryBuilder());
+        }
+        return query;
+    }
+
+    /**
+     * Implemented by the quirks of a {@code Sql2o} instance that maps rows with a registry.
+     */
+    public interface Holder {
+        @Nonnull
+        Sql2oRowMappers getRowMappers();
+    }
+
+    private final class RowMapperResultSetHandlerFactoryBuilder extends DefaultResultSetHandlerFactoryBuilder {
+        @Override
+        public <T> ResultSetHandlerFactory<T> newFactory(Class<T> type) {
+            Sql2oRowMapper<T> mapper = findRowMapper(type);
+            if (mapper == null) {
+                return super.newFactory(type);
+            }
+
+            // Query configures the builder right before asking for a factory, capture the settings now
+            Quirks quirks = getQuirks();
+            boolean caseSensitive = isCaseSensitive();
+            boolean autoDeriveColumnNames = isAutoDeriveColumnNames();
+            boolean throwOnMappingError = isThrowOnMappingError();
+            Map<String, String> columnMappings = getColumnMappings();
+            ResultSetHandlerFactory<T> fallback = super.newFactory(type);
+            return metaData -> {
+                int[] columns = resolveColumns(mapper.getPropertyNames(), metaData, quirks, caseSensitive, autoDeriveColumnNames, throwOnMappingError, columnMappings);
+                if (columns == null) {
+                    return fallback.newResultSetHandler(metaData);
+                }
+                return resultSet -> mapper.map(resultSet, columns, quirks);
+            };
+        }
+    }
+
+    /**
+     * Matches columns to properties like Sql2o's {@code PojoMetadata} does.
+     *
+     * @return the column of each property, or {@code null} if a column maps to a nested property
+     */
+    @Nullable
+    private static int[] resolveColumns(@Nonnull List<String> propertyNames, @Nonnull ResultSetMetaData metaData, @Nonnull Quirks quirks, boolean caseSensitive, boolean autoDeriveColumnNames, boolean throwOnMappingError, @Nullable Map<String, String> columnMappings) throws SQLException {
+        Map<String, Integer> properties = new HashMap<>();
+        for (int i = 0; i < propertyNames.size(); i++) {
+            String propertyName = propertyNames.get(i);
+            properties.put(caseSensitive ? propertyName : propertyName.toLowerCase(), i);
+        }
+
+        int columnCount = metaData.getColumnCount();
+        int[] columns = new int[propertyNames.size()];
+        for (int column = 1; column <= columnCount; column++) {
+            String columnName = quirks.getColumnName(metaData, column);
+            String property = caseSensitive ? columnName : columnName.toLowerCase();
+            if (columnMappings != null && columnMappings.containsKey(property)) {
+                property = columnMappings.get(property);
+            }
+            if (autoDeriveColumnNames) {
+                property = UnderscoreToCamelCase.convert(property);
+                if (!caseSensitive) {
+                    property = property.toLowerCase();
+                }
+            }
+            if (property.indexOf('.') > 0) {
+                return null;
+            }
+
+            Integer index = properties.get(property);
+            if (index != null) {
+                columns[index] = column;
+            } else if (throwOnMappingError && columnCount > 1) {
+                throw new Sql2oException("Could not map " + columnName + " to any property.");
+            }
+        }
+        return columns;
+    }
+}
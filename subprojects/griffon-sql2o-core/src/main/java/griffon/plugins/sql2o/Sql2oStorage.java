@@ -17,11 +17,42 @@
  */
 package griffon.plugins.sql2o;
 
+import griffon.annotations.core.Nonnull;
 import griffon.core.storage.ObjectStorage;
 import org.sql2o.Sql2o;
 
+import java.util.function.Function;
+
+import static griffon.util.GriffonNameUtils.requireNonBlank;
+import static java.util.Objects.requireNonNull;
+
 /**
  * @author Andres Almiray
  */
 public interface Sql2oStorage extends ObjectStorage<Sql2o> {
+    /**
+     * Returns the instance stored under {@code name}, creating and storing it with {@code factory} if
+     * there is none. The default implementation checks and stores without any coordination, so concurrent
+     * callers may each invoke the factory; {@code DefaultSql2oStorage} makes them wait for a single
+     * invocation instead.
+     *
+     * @param name    the name of the datasource
+     * @param factory creates the instance when missing
+     *
+     * @return the stored instance
+     *
+     * @since 3.0.0
+     */
+    @Nonnull
+    default Sql2o computeIfAbsent(@Nonnull String name, @Nonnull Function<String, Sql2o> factory) {
+        requireNonBlank(name, "Argument 'name' must not be blank");
+        requireNonNull(factory, "Argument 'factory' must not be null");
+
+        Sql2o sql2o = get(name);
+        if (sql2o == null) {
+            sql2o = factory.apply(name);
+            set(name, sql2o);
+        }
+        return sql2o;
+    }
 }
@@ -0,0 +1,33 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package griffon.plugins.sql2o;
+
+import griffon.annotations.core.Nonnull;
+import org.sql2o.Connection;
+
+/**
+ * Callback invoked with a {@code Connection} that holds an open transaction. The transaction is
+ * committed when the outermost callback returns and rolled back when it fails; callbacks must not
+ * commit, roll back or close the connection themselves.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public interface Sql2oTransactionCallback<R> {
+    R handle(@Nonnull String datasourceName, @Nonnull Connection connection);
+}
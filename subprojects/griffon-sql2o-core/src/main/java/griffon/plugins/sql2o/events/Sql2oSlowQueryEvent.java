@@ -0,0 +1,77 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package griffon.plugins.sql2o.events;
+
+import griffon.annotations.core.Nonnull;
+import griffon.core.event.Event;
+
+import static griffon.util.GriffonNameUtils.requireNonBlank;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Triggered when a statement takes longer than its datasource's {@code slowQueryThresholdMs}.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public class Sql2oSlowQueryEvent extends Event {
+    private final String name;
+    private final String sql;
+    private final String parameters;
+    private final long rows;
+    private final long elapsedMillis;
+
+    public Sql2oSlowQueryEvent(@Nonnull String name, @Nonnull String sql, @Nonnull String parameters, long rows, long elapsedMillis) {
+        this.name = requireNonBlank(name, "Argument 'name' must not be blank");
+        this.sql = requireNonNull(sql, "Argument 'sql' must not be null");
+        this.parameters = requireNonNull(parameters, "Argument 'parameters' must not be null");
+        this.rows = rows;
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    @Nonnull
+    public String getName() {
+        return name;
+    }
+
+    @Nonnull
+    public String getSql() {
+        return sql;
+    }
+
+    /**
+     * @return a summary of the bound parameters, e.g. {@code [1=42, 2='Doe']}
+     */
+    @Nonnull
+    public String getParameters() {
+        return parameters;
+    }
+
+    public long getRows() {
+        return rows;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    @Nonnull
+    public static Sql2oSlowQueryEvent of(@Nonnull String name, @Nonnull String sql, @Nonnull String parameters, long rows, long elapsedMillis) {
+        return new Sql2oSlowQueryEvent(name, sql, parameters, rows, elapsedMillis);
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package griffon.plugins.sql2o.exceptions;
+
+import griffon.annotations.core.Nonnull;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Thrown by {@code Sql2oHandler.withAllSql2o} when the callback failed or did not finish in time on at least one
+ * datasource. Results from the datasources that succeeded are still available.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public class PartialSql2oException extends RuntimeSql2oException {
+    private final Map<String, Object> results;
+    private final Map<String, Throwable> failures;
+
+    public PartialSql2oException(@Nonnull Map<String, ?> results, @Nonnull Map<String, Throwable> failures) {
+        super(firstFailedName(failures), format(failures), asException(failures.values().iterator().next()));
+        this.results = Collections.unmodifiableMap(new LinkedHashMap<>(requireNonNull(results, "results")));
+        this.failures = Collections.unmodifiableMap(new LinkedHashMap<>(failures));
+        for (Throwable failure : this.failures.values()) {
+            if (failure != getCause()) {
+                addSuppressed(failure);
+            }
+        }
+    }
+
+    /**
+     * @return the callback results of every datasource that succeeded, keyed by datasource name
+     */
+    @Nonnull
+    public Map<String, Object> getResults() {
+        return results;
+    }
+
+    /**
+     * @return the error raised by every datasource that failed or timed out, keyed by datasource name
+     */
+    @Nonnull
+    public Map<String, Throwable> getFailures() {
+        return failures;
+    }
+
+    @Nonnull
+    private static String firstFailedName(@Nonnull Map<String, Throwable> failures) {
+        requireNonNull(failures, "failures");
+        if (failures.isEmpty()) {
+            throw new IllegalArgumentException("Argument 'failures' must not be empty");
+        }
+        return failures.keySet().iterator().next();
+    }
+
+    @Nonnull
+    private static String format(@Nonnull Map<String, Throwable> failures) {
+        return "An error occurred when executing a statement on sql2o " + failures.keySet();
+    }
+
+    @Nonnull
+    private static Exception asException(@Nonnull Throwable failure) {
+        return failure instanceof Exception ? (Exception) failure : new RuntimeException(failure);
+    }
+}
@@ -35,6 +35,16 @@ public class RuntimeSql2oException extends GriffonException {
         this.datasourceName = datasourceName;
     }
 
+    protected RuntimeSql2oException(@Nonnull String datasourceName, @Nonnull String message, @Nonnull Exception sqle) {
+        super(message, requireNonNull(sqle, "sqle"));
+        this.datasourceName = requireNonBlank(datasourceName, "datasourceName");
+    }
+
+    protected RuntimeSql2oException(@Nonnull String datasourceName, @Nonnull String message) {
+        super(message);
+        this.datasourceName = requireNonBlank(datasourceName, "datasourceName");
+    }
+
     @Nonnull
     private static String format(@Nonnull String datasourceName) {
         requireNonBlank(datasourceName, "datasourceName");
@@ -0,0 +1,33 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package griffon.plugins.sql2o.exceptions;
+
+import griffon.annotations.core.Nonnull;
+
+/**
+ * Thrown without running the callback when its datasource's circuit breaker is open or its bulkhead has no
+ * room left for another concurrent callback.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public class UnavailableSql2oException extends RuntimeSql2oException {
+    public UnavailableSql2oException(@Nonnull String datasourceName, @Nonnull String reason) {
+        super(datasourceName, "Sql2o '" + datasourceName + "' is unavailable: " + reason);
+    }
+}
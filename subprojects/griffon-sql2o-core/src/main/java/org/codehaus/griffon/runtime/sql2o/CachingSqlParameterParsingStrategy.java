@@ -0,0 +1,167 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.sql2o;
+
+import griffon.annotations.core.Nonnull;
+import org.codehaus.griffon.runtime.sql2o.monitor.Sql2oStatementCacheMonitor;
+import org.sql2o.quirks.parameterparsing.SqlParameterParsingStrategy;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Remembers the outcome of parsing named parameters for recently used statements, so that running the
+ * same SQL over and over skips the character by character scan Sql2o performs on every {@code createQuery}.
+ * <p>
+ * Lookups never lock. Once an insertion takes the cache past its size, that thread sweeps it and evicts
+ * entries not used since the previous sweep, an approximation of least recently used eviction.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+class CachingSqlParameterParsingStrategy implements SqlParameterParsingStrategy, Sql2oStatementCacheMonitor.StatementCacheStatistics {
+    private final SqlParameterParsingStrategy delegate;
+    private final int maxSize;
+    private final ConcurrentMap<String, ParsedSql> cache = new ConcurrentHashMap<>();
+    private final AtomicBoolean sweeping = new AtomicBoolean();
+    // only touched by the thread that is sweeping
+    private Iterator<ParsedSql> hand;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    CachingSqlParameterParsingStrategy(@Nonnull SqlParameterParsingStrategy delegate, int maxSize) {
+        this.delegate = requireNonNull(delegate, "Argument 'delegate' must not be null");
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Argument 'maxSize' must be greater than zero");
+        }
+        this.maxSize = maxSize;
+    }
+
+    @Override
+    public String parseSql(String statement, Map<String, List<Integer>> mapToFill) {
+        ParsedSql parsed = cache.get(statement);
+        if (parsed == null) {
+            misses.increment();
+            String sql = delegate.parseSql(statement, mapToFill);
+            if (cache.putIfAbsent(statement, new ParsedSql(sql, mapToFill)) == null && cache.size() > maxSize) {
+                sweep();
+            }
+            return sql;
+        }
+
+        hits.increment();
+        parsed.touch();
+        // Query owns and may rewrite its index lists (e.g. when expanding array parameters)
+        for (Map.Entry<String, List<Integer>> e : parsed.parameters.entrySet()) {
+            mapToFill.put(e.getKey(), new ArrayList<>(e.getValue()));
+        }
+        return parsed.sql;
+    }
+
+    private void sweep() {
+        // one sweep at a time, meanwhile other threads carry on with the cache slightly over its size
+        if (!sweeping.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            // entries used since the hand last passed them get a second chance, for up to one turn around the cache
+            int secondChances = cache.size();
+            while (cache.size() > maxSize) {
+                if (hand == null || !hand.hasNext()) {
+                    hand = cache.values().iterator();
+                    if (!hand.hasNext()) {
+                        break;
+                    }
+                }
+                ParsedSql parsed = hand.next();
+                if (parsed.used && secondChances-- > 0) {
+                    parsed.used = false;
+                } else {
+                    hand.remove();
+                    evictions.increment();
+                }
+            }
+        } finally {
+            sweeping.set(false);
+        }
+    }
+
+    @Override
+    public void clear() {
+        cache.clear();
+    }
+
+    @Override
+    public int getSize() {
+        return cache.size();
+    }
+
+    @Override
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    @Override
+    public long getHits() {
+        return hits.sum();
+    }
+
+    @Override
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    @Override
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    private static final class ParsedSql {
+        private final String sql;
+        private final Map<String, List<Integer>> parameters;
+        // new entries count as used, so the sweep their insertion triggers does not evict them right away
+        private volatile boolean used = true;
+
+        private ParsedSql(@Nonnull String sql, @Nonnull Map<String, List<Integer>> parameters) {
+            this.sql = sql;
+            Map<String, List<Integer>> copy = new LinkedHashMap<>();
+            for (Map.Entry<String, List<Integer>> e : parameters.entrySet()) {
+                copy.put(e.getKey(), Collections.unmodifiableList(new ArrayList<>(e.getValue())));
+            }
+            this.parameters = Collections.unmodifiableMap(copy);
+        }
+
+        private void touch() {
+            // skip the write when already marked, hot entries are read far more often than swept
+            if (!used) {
+                used = true;
+            }
+        }
+    }
+}
@@ -0,0 +1,250 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.sql2o;
+
+import griffon.annotations.core.Nonnull;
+import griffon.annotations.core.Nullable;
+import griffon.plugins.sql2o.exceptions.OverloadedSql2oException;
+import griffon.plugins.sql2o.exceptions.UnavailableSql2oException;
+import org.codehaus.griffon.runtime.sql2o.monitor.Sql2oCircuitBreakerMonitor;
+
+import java.sql.SQLException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Circuit breaker and bulkhead guarding a single datasource. The breaker opens after {@code failureThreshold}
+ * consecutive callbacks failed with a {@code SQLException}, rejects every callback for {@code openMs}, then lets a
+ * single trial callback through: its outcome closes the breaker or opens it again. The bulkhead caps the number of
+ * callbacks running at the same time, so a slow datasource can't tie up every application thread. Callbacks nested
+ * inside another callback on the same thread run under the outermost one's permit, which also records the outcome.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+class DatasourceCircuitBreaker implements Sql2oCircuitBreakerMonitor.CircuitBreakerStatistics {
+    enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    interface StateListener {
+        void circuitOpened(@Nonnull String datasourceName);
+
+        void circuitClosed(@Nonnull String datasourceName);
+    }
+
+    private final String datasourceName;
+    private final int failureThreshold;
+    private final long openNanos;
+    private final int bulkheadLimit;
+    private final long maxWaitNanos;
+    private final Semaphore bulkhead;
+    private final StateListener listener;
+    private final AtomicReference<State> state = new AtomicReference<>(State.CLOSED);
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+    private final AtomicBoolean trialInFlight = new AtomicBoolean();
+    private final ThreadLocal<int[]> depth = ThreadLocal.withInitial(() -> new int[1]);
+    private final LongAdder opened = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder overloaded = new LongAdder();
+    private volatile long openedAt;
+
+    DatasourceCircuitBreaker(@Nonnull String datasourceName, int failureThreshold, long openMillis, int bulkheadLimit, long maxWaitMillis, @Nonnull StateListener listener) {
+        this.datasourceName = datasourceName;
+        this.failureThreshold = failureThreshold;
+        this.openNanos = TimeUnit.MILLISECONDS.toNanos(openMillis);
+        this.bulkheadLimit = bulkheadLimit;
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+        this.bulkhead = bulkheadLimit > 0 ? new Semaphore(bulkheadLimit, true) : null;
+        this.listener = listener;
+    }
+
+    /**
+     * Lets a callback run, or fails fast when the breaker is open or the bulkhead is full. Every successful call
+     * must be paired with {@code release}.
+     *
+     * @return {@code true} if the callback is the trial that decides whether a half-open breaker closes
+     */
+    boolean acquire() {
+        int[] held = depth.get();
+        if (held[0] > 0) {
+            // the bulkhead is not reentrant, waiting for a second permit could block on our own
+            held[0]++;
+            return false;
+        }
+
+        boolean trial = false;
+        if (failureThreshold > 0) {
+            State current = state.get();
+            if (current == State.OPEN && System.nanoTime() - openedAt >= openNanos) {
+                state.compareAndSet(State.OPEN, State.HALF_OPEN);
+                current = state.get();
+            }
+            if (current == State.OPEN) {
+                throw reject("circuit breaker is open");
+            }
+            if (current == State.HALF_OPEN) {
+                if (!trialInFlight.compareAndSet(false, true)) {
+                    throw reject("circuit breaker is waiting for a trial callback");
+                }
+                trial = true;
+            }
+        }
+
+        if (bulkhead != null && !acquireBulkhead()) {
+            if (trial) {
+                trialInFlight.set(false);
+            }
+            rejected.increment();
+            overloaded.increment();
+            throw new OverloadedSql2oException(datasourceName, "all " + bulkheadLimit + " bulkhead permits are in use");
+        }
+        held[0] = 1;
+        return trial;
+    }
+
+    void release(boolean trial, @Nullable Throwable failure) {
+        int[] held = depth.get();
+        if (--held[0] > 0) {
+            return;
+        }
+        depth.remove();
+
+        if (bulkhead != null) {
+            bulkhead.release();
+        }
+        if (failureThreshold == 0) {
+            return;
+        }
+
+        if (failure != null && isDatabaseFailure(failure)) {
+            boolean reopened = trial && open(State.HALF_OPEN);
+            if (!reopened && consecutiveFailures.incrementAndGet() >= failureThreshold) {
+                open(State.CLOSED);
+            }
+        } else {
+            consecutiveFailures.set(0);
+            if (trial && state.compareAndSet(State.HALF_OPEN, State.CLOSED)) {
+                listener.circuitClosed(datasourceName);
+            }
+        }
+
+        if (trial) {
+            trialInFlight.set(false);
+        }
+    }
+
+    @Nonnull
+    State state() {
+        return state.get();
+    }
+
+    private boolean open(@Nonnull State expected) {
+        // set before the state flips so that no caller sees OPEN with a stale timestamp
+        openedAt = System.nanoTime();
+        if (state.compareAndSet(expected, State.OPEN)) {
+            opened.increment();
+            listener.circuitOpened(datasourceName);
+            return true;
+        }
+        return false;
+    }
+
+    private boolean acquireBulkhead() {
+        if (maxWaitNanos == 0L) {
+            return bulkhead.tryAcquire();
+        }
+        try {
+            return bulkhead.tryAcquire(maxWaitNanos, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    @Nonnull
+    private UnavailableSql2oException reject(@Nonnull String reason) {
+        rejected.increment();
+        return new UnavailableSql2oException(datasourceName, reason);
+    }
+
+    private static boolean isDatabaseFailure(@Nonnull Throwable failure) {
+        // failures raised by the callback itself say nothing about the health of the datasource
+        for (Throwable t = failure; t != null; t = t.getCause() == t ? null : t.getCause()) {
+            if (t instanceof SQLException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public String getState() {
+        return state.get().name();
+    }
+
+    @Override
+    public int getConsecutiveFailures() {
+        return consecutiveFailures.get();
+    }
+
+    @Override
+    public long getOpenedCount() {
+        return opened.sum();
+    }
+
+    @Override
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    @Override
+    public long getOverloadedCount() {
+        return overloaded.sum();
+    }
+
+    @Override
+    public int getBulkheadLimit() {
+        return bulkheadLimit;
+    }
+
+    @Override
+    public int getBulkheadAvailable() {
+        return bulkhead != null ? bulkhead.availablePermits() : 0;
+    }
+
+    @Override
+    public int getBulkheadWaiting() {
+        return bulkhead != null ? bulkhead.getQueueLength() : 0;
+    }
+
+    @Override
+    public void reset() {
+        consecutiveFailures.set(0);
+        opened.reset();
+        rejected.reset();
+        overloaded.reset();
+        if (state.getAndSet(State.CLOSED) != State.CLOSED) {
+            listener.circuitClosed(datasourceName);
+        }
+    }
+}
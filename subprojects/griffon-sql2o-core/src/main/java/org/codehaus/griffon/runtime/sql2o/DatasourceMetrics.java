@@ -0,0 +1,152 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.sql2o;
+
+import griffon.annotations.core.Nonnull;
+import org.codehaus.griffon.runtime.sql2o.monitor.Sql2oQueryMetricsMonitor;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Callback and statement figures for a single datasource. Every counter is a {@code LongAdder} and latencies go
+ * to a {@code LatencyHistogram}, so recording never blocks callers running in parallel.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+class DatasourceMetrics implements Sql2oQueryMetricsMonitor.QueryStatistics {
+    static final int MAX_TRACKED_STATEMENTS = 100;
+    static final String OTHER_STATEMENTS = "(other statements)";
+
+    private final long slowQueryThresholdNanos;
+    private final LongAdder callbacks = new LongAdder();
+    private final LongAdder inFlight = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    private final LatencyHistogram latencies = new LatencyHistogram();
+    private final ConcurrentMap<String, LongAdder> slowQueries = new ConcurrentHashMap<>();
+
+    DatasourceMetrics(long slowQueryThresholdMillis) {
+        this.slowQueryThresholdNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0L, slowQueryThresholdMillis));
+    }
+
+    long callbackStarted() {
+        inFlight.increment();
+        return System.nanoTime();
+    }
+
+    void callbackFailed() {
+        errors.increment();
+    }
+
+    void callbackRetried() {
+        retries.increment();
+    }
+
+    void callbackFinished(long startedAt) {
+        latencies.recordNanos(System.nanoTime() - startedAt);
+        callbacks.increment();
+        inFlight.decrement();
+    }
+
+    /**
+     * Counts the statement as slow when it took longer than the datasource's {@code slowQueryThresholdMs}.
+     *
+     * @return {@code true} if the statement was slow
+     */
+    boolean statementFinished(@Nonnull String sql, long elapsedNanos) {
+        if (slowQueryThresholdNanos == 0L || elapsedNanos < slowQueryThresholdNanos) {
+            return false;
+        }
+
+        LongAdder counter = slowQueries.get(sql);
+        if (counter == null) {
+            // bound the number of distinct statements kept, ad-hoc SQL would grow this map forever
+            String key = slowQueries.size() < MAX_TRACKED_STATEMENTS ? sql : OTHER_STATEMENTS;
+            counter = slowQueries.computeIfAbsent(key, k -> new LongAdder());
+        }
+        counter.increment();
+        return true;
+    }
+
+    boolean isSlowQueryDetectionEnabled() {
+        return slowQueryThresholdNanos > 0L;
+    }
+
+    long getSlowQueryThresholdNanos() {
+        return slowQueryThresholdNanos;
+    }
+
+    @Override
+    public long getCallbackCount() {
+        return callbacks.sum();
+    }
+
+    @Override
+    public long getInFlightCount() {
+        return inFlight.sum();
+    }
+
+    @Override
+    public long getErrorCount() {
+        return errors.sum();
+    }
+
+    @Override
+    public long getRetryCount() {
+        return retries.sum();
+    }
+
+    @Override
+    public double getLatencyPercentileMillis(double percentile) {
+        return latencies.percentileMillis(percentile);
+    }
+
+    @Override
+    public double getMaxLatencyMillis() {
+        return latencies.maxMillis();
+    }
+
+    @Override
+    public long getSlowQueryThresholdMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(slowQueryThresholdNanos);
+    }
+
+    @Override
+    public Map<String, Long> getSlowQueryCounts() {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        for (Map.Entry<String, LongAdder> entry : slowQueries.entrySet()) {
+            counts.put(entry.getKey(), entry.getValue().sum());
+        }
+        return counts;
+    }
+
+    @Override
+    public void reset() {
+        callbacks.reset();
+        errors.reset();
+        retries.reset();
+        latencies.reset();
+        slowQueries.clear();
+    }
+}
@@ -0,0 +1,252 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.sql2o;
+
+import com.zaxxer.hikari.HikariConfigMXBean;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import griffon.annotations.core.Nonnull;
+import griffon.annotations.core.Nullable;
+import org.codehaus.griffon.runtime.sql2o.monitor.Sql2oPoolMonitor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sql2o.connectionsources.ConnectionSource;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Connection pool figures of a single datasource, read from the HikariCP pool built by the {@code DataSourceFactory},
+ * plus how long callers waited for a connection. When the datasource has an {@code adaptivePool} block, {@code adjust}
+ * grows the pool by a quarter while callers wait longer than {@code targetWaitMs} on average (or are queued at all),
+ * and shrinks it by an eighth while waits stay well under the target and at most half the connections are in use.
+ * Growing fast and shrinking slowly keeps the pool from oscillating when load changes.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+class DatasourcePool implements Sql2oPoolMonitor.PoolStatistics {
+    private static final Logger LOG = LoggerFactory.getLogger(DatasourcePool.class);
+
+    static final class Sizing {
+        private final int minimumPoolSize;
+        private final int maximumPoolSize;
+        private final long targetWaitNanos;
+        private final long intervalMillis;
+
+        Sizing(int minimumPoolSize, int maximumPoolSize, long targetWaitMillis, long intervalMillis) {
+            this.minimumPoolSize = minimumPoolSize;
+            this.maximumPoolSize = maximumPoolSize;
+            this.targetWaitNanos = TimeUnit.MILLISECONDS.toNanos(targetWaitMillis);
+            this.intervalMillis = intervalMillis;
+        }
+
+        long getIntervalMillis() {
+            return intervalMillis;
+        }
+    }
+
+    private final String datasourceName;
+    private volatile Sizing sizing;
+    private final LatencyHistogram acquisitions = new LatencyHistogram();
+    private final LongAdder acquisitionCount = new LongAdder();
+    private final LongAdder windowAcquisitions = new LongAdder();
+    private final LongAdder windowWaitNanos = new LongAdder();
+    private final LongAdder resizes = new LongAdder();
+    private volatile HikariDataSource pool;
+    private volatile double idleRatio = 1d;
+
+    DatasourcePool(@Nonnull String datasourceName, @Nullable Sizing sizing) {
+        this.datasourceName = datasourceName;
+        this.sizing = sizing;
+    }
+
+    /**
+     * Starts reading figures from the given pool. DataSources other than HikariCP's are timed, but not inspected.
+     * The sizing replaces the previous one, a reloaded datasource may come with different settings.
+     */
+    void attach(@Nonnull DataSource dataSource, @Nullable Sizing sizing) {
+        this.sizing = sizing;
+        try {
+            if (!dataSource.isWrapperFor(HikariDataSource.class)) {
+                LOG.debug("DataSource of '{}' is not a HikariCP pool, its connections can't be inspected", datasourceName);
+                return;
+            }
+            HikariDataSource hikari = dataSource.unwrap(HikariDataSource.class);
+            // minimumIdle keeps its configured share of the pool while it gets resized
+            idleRatio = Math.min(1d, hikari.getMinimumIdle() / (double) Math.max(1, hikari.getMaximumPoolSize()));
+            pool = hikari;
+        } catch (SQLException e) {
+            LOG.debug("DataSource of '{}' could not be unwrapped", datasourceName, e);
+        }
+    }
+
+    void detach() {
+        pool = null;
+    }
+
+    boolean isAttached() {
+        return pool != null;
+    }
+
+    @Nullable
+    Sizing getSizing() {
+        return sizing;
+    }
+
+    /**
+     * Wraps the given source so that the time spent waiting for each connection is recorded.
+     */
+    @Nonnull
+    ConnectionSource timed(@Nonnull ConnectionSource delegate) {
+        return () -> {
+            long startedAt = System.nanoTime();
+            Connection connection = delegate.getConnection();
+            acquired(System.nanoTime() - startedAt);
+            return connection;
+        };
+    }
+
+    void acquired(long nanos) {
+        acquisitions.recordNanos(nanos);
+        acquisitionCount.increment();
+        windowAcquisitions.increment();
+        windowWaitNanos.add(nanos);
+    }
+
+    /**
+     * Resizes the pool based on the waits observed since the previous call.
+     */
+    void adjust() {
+        HikariDataSource hikari = pool;
+        long count = windowAcquisitions.sumThenReset();
+        long waited = windowWaitNanos.sumThenReset();
+        Sizing sizing = this.sizing;
+        if (sizing == null || hikari == null || hikari.getHikariPoolMXBean() == null) {
+            return;
+        }
+
+        HikariPoolMXBean stats = hikari.getHikariPoolMXBean();
+        HikariConfigMXBean config = hikari.getHikariConfigMXBean();
+        int current = config.getMaximumPoolSize();
+        long averageWaitNanos = count > 0 ? waited / count : 0L;
+        int waiting = stats.getThreadsAwaitingConnection();
+
+        int target = current;
+        if (waiting > 0 || averageWaitNanos > sizing.targetWaitNanos) {
+            target = current + Math.max(1, current / 4);
+        } else if (averageWaitNanos <= sizing.targetWaitNanos / 4 && stats.getActiveConnections() <= current / 2) {
+            target = current - Math.max(1, current / 8);
+        }
+        target = Math.max(sizing.minimumPoolSize, Math.min(sizing.maximumPoolSize, target));
+        if (target == current) {
+            return;
+        }
+
+        int minimumIdle = (int) Math.round(target * idleRatio);
+        if (target > current) {
+            config.setMaximumPoolSize(target);
+            config.setMinimumIdle(minimumIdle);
+        } else {
+            // never let minimumIdle exceed maximumPoolSize, not even in between both calls
+            config.setMinimumIdle(minimumIdle);
+            config.setMaximumPoolSize(target);
+        }
+        resizes.increment();
+        LOG.info("Resized pool of datasource '{}' from {} to {} connections (average wait {} ms, {} threads waiting)",
+            datasourceName, current, target, TimeUnit.NANOSECONDS.toMillis(averageWaitNanos), waiting);
+    }
+
+    @Override
+    public int getActiveConnections() {
+        HikariPoolMXBean stats = stats();
+        return stats != null ? stats.getActiveConnections() : -1;
+    }
+
+    @Override
+    public int getIdleConnections() {
+        HikariPoolMXBean stats = stats();
+        return stats != null ? stats.getIdleConnections() : -1;
+    }
+
+    @Override
+    public int getTotalConnections() {
+        HikariPoolMXBean stats = stats();
+        return stats != null ? stats.getTotalConnections() : -1;
+    }
+
+    @Override
+    public int getThreadsAwaitingConnection() {
+        HikariPoolMXBean stats = stats();
+        return stats != null ? stats.getThreadsAwaitingConnection() : -1;
+    }
+
+    @Override
+    public int getMaximumPoolSize() {
+        HikariDataSource hikari = pool;
+        return hikari != null ? hikari.getHikariConfigMXBean().getMaximumPoolSize() : -1;
+    }
+
+    @Override
+    public int getMinimumIdle() {
+        HikariDataSource hikari = pool;
+        return hikari != null ? hikari.getHikariConfigMXBean().getMinimumIdle() : -1;
+    }
+
+    @Override
+    public boolean isAdaptiveSizing() {
+        return sizing != null;
+    }
+
+    @Override
+    public long getResizeCount() {
+        return resizes.sum();
+    }
+
+    @Override
+    public long getAcquisitionCount() {
+        return acquisitionCount.sum();
+    }
+
+    @Override
+    public double getAcquisitionPercentileMillis(double percentile) {
+        return acquisitions.percentileMillis(percentile);
+    }
+
+    @Override
+    public double getMaxAcquisitionMillis() {
+        return acquisitions.maxMillis();
+    }
+
+    @Override
+    public void reset() {
+        acquisitions.reset();
+        acquisitionCount.reset();
+        resizes.reset();
+    }
+
+    @Nullable
+    private HikariPoolMXBean stats() {
+        HikariDataSource hikari = pool;
+        // the pool MXBean is null until HikariCP has started its pool
+        return hikari != null ? hikari.getHikariPoolMXBean() : null;
+    }
+}
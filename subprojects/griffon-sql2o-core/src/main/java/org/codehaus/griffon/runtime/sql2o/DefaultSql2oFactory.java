@@ -27,11 +27,16 @@ import griffon.plugins.datasource.DataSourceStorage;
 import griffon.plugins.monitor.MBeanManager;
 import griffon.plugins.sql2o.Sql2oBootstrap;
 import griffon.plugins.sql2o.Sql2oFactory;
+import griffon.plugins.sql2o.Sql2oRowMappers;
 import griffon.plugins.sql2o.events.Sql2oConnectEndEvent;
 import griffon.plugins.sql2o.events.Sql2oConnectStartEvent;
 import griffon.plugins.sql2o.events.Sql2oDisconnectEndEvent;
 import griffon.plugins.sql2o.events.Sql2oDisconnectStartEvent;
+import griffon.plugins.sql2o.events.Sql2oSlowQueryEvent;
 import org.codehaus.griffon.runtime.core.storage.AbstractObjectFactory;
+import org.codehaus.griffon.runtime.sql2o.monitor.Sql2oStatementCacheMonitor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.sql2o.Sql2o;
 import org.sql2o.quirks.Db2Quirks;
 import org.sql2o.quirks.NoQuirks;
@@ -42,16 +47,31 @@ import org.sql2o.quirks.Quirks;
 import javax.inject.Inject;
 import javax.inject.Named;
 import javax.sql.DataSource;
+import java.util.Collections;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
+import static griffon.util.ConfigUtils.getConfigValue;
+import static griffon.util.ConfigUtils.getConfigValueAsBoolean;
+import static griffon.util.ConfigUtils.getConfigValueAsInt;
 import static griffon.util.GriffonNameUtils.isBlank;
 import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
 
 /**
  * @author Andres Almiray
  */
 public class DefaultSql2oFactory extends AbstractObjectFactory<Sql2o> implements Sql2oFactory {
+    private static final Logger LOG = LoggerFactory.getLogger(DefaultSql2oFactory.class);
+    private static final String KEY_STATEMENT_CACHE = "statementCache";
+    private static final String KEY_ROW_MAPPERS = "rowMappers";
+
+    private final ConcurrentMap<String, Object> dataSourceLocks = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, CachingSqlParameterParsingStrategy> statementCaches = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Sql2o, DataSource> instanceDataSources = new ConcurrentHashMap<>();
+
     @Inject
     private DataSourceFactory dataSourceFactory;
 
@@ -61,6 +81,15 @@ public class DefaultSql2oFactory extends AbstractObjectFactory<Sql2o> implements
     @Inject
     private Injector injector;
 
+    @Inject
+    private Sql2oMetrics sql2oMetrics;
+
+    @Inject
+    private Sql2oPools sql2oPools;
+
+    @Inject
+    private Sql2oRowMappers rowMappers;
+
     @Inject
     private MBeanManager mbeanManager;
 
@@ -111,6 +140,34 @@ public class DefaultSql2oFactory extends AbstractObjectFactory<Sql2o> implements
         return sql2o;
     }
 
+    @Nonnull
+    @Override
+    public Sql2o createReplacement(@Nonnull String name) {
+        Map<String, Object> config = getConfigurationFor(name);
+        event(Sql2oConnectStartEvent.of(name, config));
+        // the current DataSource stays in storage, and in use, until its replacement is ready
+        DataSource dataSource = dataSourceFactory.create(name);
+        Sql2o sql2o;
+        try {
+            sql2o = createSql2o(name, config, dataSource);
+            for (Object o : injector.getInstances(Sql2oBootstrap.class)) {
+                ((Sql2oBootstrap) o).init(name, sql2o);
+            }
+        } catch (RuntimeException e) {
+            DataSource current = dataSourceStorage.get(name);
+            if (current != null) {
+                sql2oPools.attach(name, current);
+            }
+            instanceDataSources.values().remove(dataSource);
+            dataSourceFactory.destroy(name, dataSource);
+            throw e;
+        }
+        dataSourceStorage.set(name, dataSource);
+
+        event(Sql2oConnectEndEvent.of(name, config, sql2o));
+        return sql2o;
+    }
+
     @Override
     public void destroy(@Nonnull String name, @Nonnull Sql2o instance) {
         requireNonNull(instance, "Argument 'instance' must not be null");
@@ -121,19 +178,83 @@ public class DefaultSql2oFactory extends AbstractObjectFactory<Sql2o> implements
             ((Sql2oBootstrap) o).destroy(name, instance);
         }
 
-        closeDataSource(name);
+        DataSource dataSource = instanceDataSources.remove(instance);
+        if (dataSource != null && dataSource != dataSourceStorage.get(name)) {
+            // an instance that was replaced, its successor keeps the pool monitor and the statement cache
+            dataSourceFactory.destroy(name, dataSource);
+        } else {
+            sql2oPools.detach(name);
+            closeDataSource(name);
+            CachingSqlParameterParsingStrategy statementCache = statementCaches.get(name);
+            if (statementCache != null) {
+                statementCache.clear();
+            }
+        }
 
         event(Sql2oDisconnectEndEvent.of(name, config));
     }
 
     @Nonnull
-    @SuppressWarnings("ConstantConditions")
     protected Sql2o createSql2o(@Nonnull String dataSourceName, @Nonnull Map<String, Object> config) {
-        DataSource dataSource = getDataSource(dataSourceName);
-        return new Sql2o(dataSource, resolveQuirks(config));
+        return createSql2o(dataSourceName, config, getDataSource(dataSourceName));
     }
 
-    private Quirks resolveQuirks(@Nonnull Map<String, Object> config) {
+    @Nonnull
+    @SuppressWarnings("ConstantConditions")
+    protected Sql2o createSql2o(@Nonnull String dataSourceName, @Nonnull Map<String, Object> config, @Nonnull DataSource dataSource) {
+        Quirks quirks = resolveQuirks(config);
+
+        Map<String, Object> statementCache = getConfigValue(config, KEY_STATEMENT_CACHE, Collections.<String, Object>emptyMap());
+        int cacheSize = getConfigValueAsInt(statementCache, "size", 0);
+        Quirks effectiveQuirks = cacheSize < 1 ? quirks : new ParsedSqlCachingQuirks(quirks, getStatementCache(dataSourceName, quirks, cacheSize));
+        if (getConfigValueAsBoolean(config, KEY_ROW_MAPPERS, false)) {
+            effectiveQuirks = new RowMapperQuirks(effectiveQuirks, rowMappers);
+        }
+
+        Sql2o sql2o = new Sql2o(dataSource, effectiveQuirks);
+        // innermost, so that only the wait for the pool is timed
+        DatasourcePool pool = sql2oPools.attach(dataSourceName, dataSource);
+        sql2o.setConnectionSource(pool.timed(sql2o.getConnectionSource()));
+        if (cacheSize > 0 && getConfigValueAsBoolean(statementCache, "driver", true)) {
+            sql2o.setConnectionSource(new StatementCachingConnectionSource(sql2o.getConnectionSource(), cacheSize));
+        }
+
+        DatasourceMetrics metrics = sql2oMetrics.metricsFor(dataSourceName);
+        if (metrics.isSlowQueryDetectionEnabled()) {
+            sql2o.setConnectionSource(new StatementTimingConnectionSource(sql2o.getConnectionSource(), (sql, parameters, rows, elapsedNanos) -> {
+                if (metrics.statementFinished(String.valueOf(sql), elapsedNanos)) {
+                    slowQuery(dataSourceName, String.valueOf(sql), parameters, rows, NANOSECONDS.toMillis(elapsedNanos));
+                }
+            }));
+        }
+        instanceDataSources.put(sql2o, dataSource);
+        return sql2o;
+    }
+
+    private void slowQuery(@Nonnull String dataSourceName, @Nonnull String sql, @Nonnull String parameters, long rows, long elapsedMillis) {
+        LOG.warn("Slow query on datasource '{}' took {} ms for {} rows: {} {}", dataSourceName, elapsedMillis, rows, sql, parameters);
+        getApplication().getEventRouter().publishEventAsync(Sql2oSlowQueryEvent.of(dataSourceName, sql, parameters, rows, elapsedMillis));
+    }
+
+    @Nonnull
+    private CachingSqlParameterParsingStrategy getStatementCache(@Nonnull String dataSourceName, @Nonnull Quirks quirks, int cacheSize) {
+        // keep one cache (and one MBean) per name, reconnecting only resets its contents
+        CachingSqlParameterParsingStrategy statementCache = statementCaches.get(dataSourceName);
+        if (statementCache != null) {
+            return statementCache;
+        }
+
+        CachingSqlParameterParsingStrategy candidate = new CachingSqlParameterParsingStrategy(quirks.getSqlParameterParsingStrategy(), cacheSize);
+        statementCache = statementCaches.putIfAbsent(dataSourceName, candidate);
+        if (statementCache != null) {
+            return statementCache;
+        }
+        mbeanManager.registerMBean(new Sql2oStatementCacheMonitor(metadata, dataSourceName, candidate));
+        return candidate;
+    }
+
+    @Nonnull
+    static Quirks resolveQuirks(@Nonnull Map<String, Object> config) {
         String quirks = String.valueOf(config.get("quirks"));
         if (isBlank(quirks) || "null".equals(quirks)) {
             return new NoQuirks();
@@ -159,20 +280,27 @@ public class DefaultSql2oFactory extends AbstractObjectFactory<Sql2o> implements
     }
 
     protected void closeDataSource(@Nonnull String dataSourceName) {
-        DataSource dataSource = dataSourceStorage.get(dataSourceName);
+        DataSource dataSource = dataSourceStorage.remove(dataSourceName);
         if (dataSource != null) {
             dataSourceFactory.destroy(dataSourceName, dataSource);
-            dataSourceStorage.remove(dataSourceName);
         }
     }
 
     @Nonnull
     protected DataSource getDataSource(@Nonnull String dataSourceName) {
         DataSource dataSource = dataSourceStorage.get(dataSourceName);
-        if (dataSource == null) {
-            dataSource = dataSourceFactory.create(dataSourceName);
-            dataSourceStorage.set(dataSourceName, dataSource);
+        if (dataSource != null) {
+            return dataSource;
+        }
+
+        // creating a DataSource starts a connection pool, make sure only one gets built per name
+        synchronized (dataSourceLocks.computeIfAbsent(dataSourceName, k -> new Object())) {
+            dataSource = dataSourceStorage.get(dataSourceName);
+            if (dataSource == null) {
+                dataSource = dataSourceFactory.create(dataSourceName);
+                dataSourceStorage.set(dataSourceName, dataSource);
+            }
+            return dataSource;
         }
-        return dataSource;
     }
 }
@@ -20,16 +20,45 @@ package org.codehaus.griffon.runtime.sql2o;
 import griffon.annotations.core.Nonnull;
 import griffon.annotations.core.Nullable;
 import griffon.plugins.sql2o.Sql2oCallback;
+import griffon.plugins.sql2o.Sql2oColumns;
 import griffon.plugins.sql2o.Sql2oFactory;
 import griffon.plugins.sql2o.Sql2oHandler;
+import griffon.plugins.sql2o.Sql2oIdempotentCallback;
 import griffon.plugins.sql2o.Sql2oStorage;
+import griffon.plugins.sql2o.Sql2oTransactionCallback;
+import griffon.plugins.sql2o.exceptions.PartialSql2oException;
 import griffon.plugins.sql2o.exceptions.RuntimeSql2oException;
+import griffon.plugins.sql2o.exceptions.UnavailableSql2oException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.sql2o.Connection;
 import org.sql2o.Sql2o;
 
 import javax.inject.Inject;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
 
+import static griffon.util.ConfigUtils.getConfigValueAsInt;
 import static griffon.util.GriffonNameUtils.requireNonBlank;
 import static java.util.Objects.requireNonNull;
 
@@ -40,14 +69,47 @@ public class DefaultSql2oHandler implements Sql2oHandler {
     private static final Logger LOG = LoggerFactory.getLogger(DefaultSql2oHandler.class);
     private static final String ERROR_DATASOURCE_NAME_BLANK = "Argument 'datasourceName' must not be blank";
     private static final String ERROR_CALLBACK_NULL = "Argument 'callback' must not be null";
+    private static final String ERROR_SQL_BLANK = "Argument 'sql' must not be blank";
+    private static final String ERROR_ITEMS_NULL = "Argument 'items' must not be null";
+    private static final String ERROR_PARAMS_NULL = "Argument 'params' must not be null";
+    private static final String ERROR_TYPE_NULL = "Argument 'type' must not be null";
+    private static final String ERROR_TIMEOUT_NULL = "Argument 'timeout' must not be null";
+    private static final String ERROR_TTL_NULL = "Argument 'ttl' must not be null";
+    private static final String ERROR_TABLE_BLANK = "Argument 'table' must not be blank";
+    private static final int DEFAULT_FETCH_SIZE = 500;
+    private static final int ISOLATION_DEFAULT = -1;
 
     private final Sql2oFactory sql2oFactory;
     private final Sql2oStorage sql2oStorage;
+    private final Sql2oExecutors sql2oExecutors;
+    private final Sql2oQueryCaches sql2oQueryCaches;
+    private final Sql2oMetrics sql2oMetrics;
+    private final Sql2oReplicaRouter sql2oReplicaRouter;
+    private final Sql2oRetries sql2oRetries;
+    private final Sql2oCircuitBreakers sql2oCircuitBreakers;
+    private final Sql2oPools sql2oPools;
+    private final Sql2oTransactions sql2oTransactions = new Sql2oTransactions();
+    private final Sql2oInFlight sql2oInFlight = new Sql2oInFlight();
+    private final ConcurrentMap<String, Lock> reloadLocks = new ConcurrentHashMap<>();
+    // shared by creations and reloads, taken exclusively once by shutdown to wait for those in progress
+    private final ReadWriteLock creationLock = new ReentrantReadWriteLock();
+    private volatile boolean shuttingDown;
 
-    @Inject
     public DefaultSql2oHandler(@Nonnull Sql2oFactory sql2oFactory, @Nonnull Sql2oStorage sql2oStorage) {
+        this(sql2oFactory, sql2oStorage, new Sql2oMetrics(sql2oFactory), new Sql2oCircuitBreakers(sql2oFactory), new Sql2oPools(sql2oFactory));
+    }
+
+    @Inject
+    public DefaultSql2oHandler(@Nonnull Sql2oFactory sql2oFactory, @Nonnull Sql2oStorage sql2oStorage, @Nonnull Sql2oMetrics sql2oMetrics, @Nonnull Sql2oCircuitBreakers sql2oCircuitBreakers, @Nonnull Sql2oPools sql2oPools) {
         this.sql2oFactory = requireNonNull(sql2oFactory, "Argument 'sql2oFactory' must not be null");
         this.sql2oStorage = requireNonNull(sql2oStorage, "Argument 'sql2oStorage' must not be null");
+        this.sql2oMetrics = requireNonNull(sql2oMetrics, "Argument 'sql2oMetrics' must not be null");
+        this.sql2oCircuitBreakers = requireNonNull(sql2oCircuitBreakers, "Argument 'sql2oCircuitBreakers' must not be null");
+        this.sql2oPools = requireNonNull(sql2oPools, "Argument 'sql2oPools' must not be null");
+        this.sql2oReplicaRouter = new Sql2oReplicaRouter(sql2oFactory, sql2oMetrics);
+        this.sql2oRetries = new Sql2oRetries(sql2oFactory);
+        this.sql2oExecutors = new Sql2oExecutors(sql2oFactory);
+        this.sql2oQueryCaches = new Sql2oQueryCaches(sql2oFactory);
     }
 
     @Nullable
@@ -59,15 +121,250 @@ public class DefaultSql2oHandler implements Sql2oHandler {
     @Nullable
     @Override
     public <R> R withSql2o(@Nonnull String datasourceName, @Nonnull Sql2oCallback<R> callback) throws RuntimeSql2oException {
+        return executeOnPrimary(datasourceName, callback, callback instanceof Sql2oIdempotentCallback);
+    }
+
+    @Nullable
+    @Override
+    public <R> R withSql2oReadOnly(@Nonnull Sql2oCallback<R> callback) throws RuntimeSql2oException {
+        return withSql2oReadOnly(DefaultSql2oFactory.KEY_DEFAULT, callback);
+    }
+
+    @Nullable
+    @Override
+    public <R> R withSql2oReadOnly(@Nonnull String group, @Nonnull Sql2oCallback<R> callback) throws RuntimeSql2oException {
+        requireNonBlank(group, "Argument 'group' must not be blank");
+        return execute(sql2oReplicaRouter.route(group), callback, callback instanceof Sql2oIdempotentCallback);
+    }
+
+    @Nullable
+    @Override
+    public <R> R withSql2oTransaction(@Nonnull Sql2oTransactionCallback<R> callback) throws RuntimeSql2oException {
+        return withSql2oTransaction(DefaultSql2oFactory.KEY_DEFAULT, ISOLATION_DEFAULT, callback);
+    }
+
+    @Nullable
+    @Override
+    public <R> R withSql2oTransaction(@Nonnull String datasourceName, @Nonnull Sql2oTransactionCallback<R> callback) throws RuntimeSql2oException {
+        return withSql2oTransaction(datasourceName, ISOLATION_DEFAULT, callback);
+    }
+
+    @Nullable
+    @Override
+    public <R> R withSql2oTransaction(@Nonnull String datasourceName, int isolationLevel, @Nonnull Sql2oTransactionCallback<R> callback) throws RuntimeSql2oException {
         requireNonBlank(datasourceName, ERROR_DATASOURCE_NAME_BLANK);
         requireNonNull(callback, ERROR_CALLBACK_NULL);
-        Sql2o sql2o = getSql2o(datasourceName);
+
+        Sql2oTransactions.BoundTransaction current = sql2oTransactions.current(datasourceName);
+        if (current != null) {
+            if (isolationLevel != ISOLATION_DEFAULT && isolationLevel != current.getIsolationLevel()) {
+                throw new IllegalStateException("Datasource '" + datasourceName + "' is already in a transaction with a different isolation level");
+            }
+            // committing or closing the participating connection leaves the outer transaction running
+            Connection participant = current.getSql2o().beginTransaction();
+            try {
+                return callback.handle(datasourceName, participant);
+            } catch (Throwable t) {
+                // Groovy callbacks may throw checked exceptions without declaring them
+                current.setRollbackOnly();
+                throw t;
+            } finally {
+                participant.close();
+            }
+        }
+
+        R result = execute(datasourceName, (name, sql2o) -> {
+            Connection connection = isolationLevel == ISOLATION_DEFAULT ? sql2o.beginTransaction() : sql2o.beginTransaction(isolationLevel);
+            Sql2oTransactions.BoundTransaction transaction = sql2oTransactions.bind(name, sql2o, connection, isolationLevel);
+            try {
+                R r = callback.handle(name, connection);
+                if (transaction.isRollbackOnly()) {
+                    throw new IllegalStateException("Transaction on datasource '" + name + "' was marked as rollback-only");
+                }
+                connection.commit();
+                return r;
+            } catch (Throwable t) {
+                // Groovy callbacks may throw checked exceptions without declaring them
+                try {
+                    connection.rollback();
+                } catch (RuntimeException re) {
+                    t.addSuppressed(re);
+                }
+                throw t;
+            } finally {
+                sql2oTransactions.unbind(name);
+            }
+        }, true); // a failed attempt was rolled back, running it again is safe
+        sql2oReplicaRouter.primaryUsed(datasourceName);
+        return result;
+    }
+
+    @Nonnull
+    @Override
+    public <R> CompletableFuture<R> withSql2oAsync(@Nonnull Sql2oCallback<R> callback) {
+        return withSql2oAsync(DefaultSql2oFactory.KEY_DEFAULT, callback);
+    }
+
+    @Nonnull
+    @Override
+    public <R> CompletableFuture<R> withSql2oAsync(@Nonnull String datasourceName, @Nonnull Sql2oCallback<R> callback) {
+        requireNonBlank(datasourceName, ERROR_DATASOURCE_NAME_BLANK);
+        requireNonNull(callback, ERROR_CALLBACK_NULL);
+        CompletableFuture<R> future = new CompletableFuture<>();
         try {
-            LOG.debug("Executing statements on datasource '{}'", datasourceName);
-            return callback.handle(datasourceName, sql2o);
-        } catch (Exception e) {
-            throw new RuntimeSql2oException(datasourceName, e);
+            sql2oExecutors.executorFor(datasourceName).execute(() -> {
+                try {
+                    future.complete(withSql2o(datasourceName, callback));
+                } catch (Throwable t) {
+                    future.completeExceptionally(t);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(new RuntimeSql2oException(datasourceName, e));
+        }
+        return future;
+    }
+
+    @Nonnull
+    @Override
+    public <R> Map<String, R> withAllSql2o(@Nonnull Collection<String> datasourceNames, @Nonnull Sql2oCallback<R> callback) throws RuntimeSql2oException {
+        return fanOut(datasourceNames, callback, -1L);
+    }
+
+    @Nonnull
+    @Override
+    public <R> Map<String, R> withAllSql2o(@Nonnull Collection<String> datasourceNames, @Nonnull Duration timeout, @Nonnull Sql2oCallback<R> callback) throws RuntimeSql2oException {
+        requireNonNull(timeout, ERROR_TIMEOUT_NULL);
+        if (timeout.isNegative() || timeout.isZero()) {
+            throw new IllegalArgumentException("Argument 'timeout' must be positive");
+        }
+        return fanOut(datasourceNames, callback, timeout.toNanos());
+    }
+
+    @Override
+    public <T> long withSql2oBatch(@Nonnull String sql, @Nonnull Iterable<T> items, int batchSize) throws RuntimeSql2oException {
+        return withSql2oBatch(DefaultSql2oFactory.KEY_DEFAULT, sql, items, batchSize);
+    }
+
+    @Override
+    public <T> long withSql2oBatch(@Nonnull String datasourceName, @Nonnull String sql, @Nonnull Iterable<T> items, int batchSize) throws RuntimeSql2oException {
+        requireNonNull(items, ERROR_ITEMS_NULL);
+        // every attempt iterates from the first item, the rows of a failed one were rolled back
+        return executeBatch(datasourceName, sql, items::iterator, batchSize, true);
+    }
+
+    @Override
+    public <T> long withSql2oBatch(@Nonnull String sql, @Nonnull Stream<T> items, int batchSize) throws RuntimeSql2oException {
+        return withSql2oBatch(DefaultSql2oFactory.KEY_DEFAULT, sql, items, batchSize);
+    }
+
+    @Override
+    public <T> long withSql2oBatch(@Nonnull String datasourceName, @Nonnull String sql, @Nonnull Stream<T> items, int batchSize) throws RuntimeSql2oException {
+        requireNonNull(items, ERROR_ITEMS_NULL);
+        // a stream can't be replayed, retrying would resume it halfway and skip the rows of the failed attempt
+        Iterator<T> iterator = items.iterator();
+        return executeBatch(datasourceName, sql, () -> iterator, batchSize, false);
+    }
+
+    @Nonnull
+    @Override
+    public <T> Stream<T> streamSql2o(@Nonnull String sql, @Nonnull Map<String, ?> params, @Nonnull Class<T> type) throws RuntimeSql2oException {
+        return streamSql2o(DefaultSql2oFactory.KEY_DEFAULT, sql, params, type);
+    }
+
+    @Nonnull
+    @Override
+    public <T> Stream<T> streamSql2o(@Nonnull String datasourceName, @Nonnull String sql, @Nonnull Map<String, ?> params, @Nonnull Class<T> type) throws RuntimeSql2oException {
+        requireNonBlank(sql, ERROR_SQL_BLANK);
+        requireNonNull(params, ERROR_PARAMS_NULL);
+        requireNonNull(type, ERROR_TYPE_NULL);
+        int fetchSize = getConfigValueAsInt(sql2oFactory.getConfigurationFor(datasourceName), "fetchSize", DEFAULT_FETCH_SIZE);
+        return withSql2o(datasourceName, (name, sql2o) -> {
+            if (sql2oTransactions.current(name) != null) {
+                // a view of the enclosing transaction, which keeps the real instance in flight already
+                return Sql2oStatements.stream(name, sql2o, sql, params, type, fetchSize, () -> { });
+            }
+            // the stream outlives the callback, keep the instance from being drained until it is closed
+            Sql2oInFlight.Entry inFlight = sql2oInFlight.enter(sql2o);
+            try {
+                return Sql2oStatements.stream(name, sql2o, sql, params, type, fetchSize, inFlight::exit);
+            } catch (RuntimeException e) {
+                inFlight.exit();
+                throw e;
+            }
+        });
+    }
+
+    @Nonnull
+    @Override
+    public Sql2oColumns fetchColumns(@Nonnull String sql, @Nonnull Map<String, ?> params) throws RuntimeSql2oException {
+        return fetchColumns(DefaultSql2oFactory.KEY_DEFAULT, sql, params);
+    }
+
+    @Nonnull
+    @Override
+    public Sql2oColumns fetchColumns(@Nonnull String datasourceName, @Nonnull String sql, @Nonnull Map<String, ?> params) throws RuntimeSql2oException {
+        requireNonBlank(sql, ERROR_SQL_BLANK);
+        requireNonNull(params, ERROR_PARAMS_NULL);
+        int fetchSize = getConfigValueAsInt(sql2oFactory.getConfigurationFor(datasourceName), "fetchSize", DEFAULT_FETCH_SIZE);
+        return withSql2o(datasourceName, (name, sql2o) -> Sql2oStatements.fetchColumns(sql2o, sql, params, fetchSize));
+    }
+
+    @Override
+    public long bulkLoad(@Nonnull String table, @Nonnull List<String> columns, @Nonnull Stream<Object[]> rows) throws RuntimeSql2oException {
+        return bulkLoad(DefaultSql2oFactory.KEY_DEFAULT, table, columns, rows);
+    }
+
+    @Override
+    public long bulkLoad(@Nonnull String datasourceName, @Nonnull String table, @Nonnull List<String> columns, @Nonnull Stream<Object[]> rows) throws RuntimeSql2oException {
+        requireNonBlank(table, ERROR_TABLE_BLANK);
+        requireNonNull(columns, "Argument 'columns' must not be null");
+        requireNonNull(rows, "Argument 'rows' must not be null");
+        if (columns.isEmpty()) {
+            throw new IllegalArgumentException("Argument 'columns' must not be empty");
         }
+        Sql2oBulkLoader loader = Sql2oBulkLoader.of(datasourceName, sql2oFactory.getConfigurationFor(datasourceName));
+        Iterator<Object[]> iterator = rows.iterator();
+        // never retried, the rows read by a failed attempt can't be replayed
+        Long total = executeOnPrimary(datasourceName, (name, sql2o) -> loader.load(sql2o, table, columns, iterator), false);
+        return total != null ? total : 0L;
+    }
+
+    @Nonnull
+    @Override
+    public <T> List<T> withCachedQuery(@Nonnull String sql, @Nonnull Map<String, ?> params, @Nonnull Class<T> type, @Nonnull Duration ttl) throws RuntimeSql2oException {
+        return withCachedQuery(DefaultSql2oFactory.KEY_DEFAULT, sql, params, type, ttl);
+    }
+
+    @Nonnull
+    @Override
+    public <T> List<T> withCachedQuery(@Nonnull String datasourceName, @Nonnull String sql, @Nonnull Map<String, ?> params, @Nonnull Class<T> type, @Nonnull Duration ttl) throws RuntimeSql2oException {
+        requireNonBlank(datasourceName, ERROR_DATASOURCE_NAME_BLANK);
+        requireNonBlank(sql, ERROR_SQL_BLANK);
+        requireNonNull(params, ERROR_PARAMS_NULL);
+        requireNonNull(type, ERROR_TYPE_NULL);
+        requireNonNull(ttl, ERROR_TTL_NULL);
+        if (ttl.isNegative() || ttl.isZero()) {
+            throw new IllegalArgumentException("Argument 'ttl' must be positive");
+        }
+        Supplier<List<T>> loader = () -> withSql2o(datasourceName, (name, sql2o) -> Sql2oStatements.fetch(sql2o, sql, params, type));
+        if (sql2oTransactions.current(datasourceName) != null) {
+            // rows read inside a transaction may include its uncommitted writes, and cached rows would miss them
+            return Collections.unmodifiableList(new ArrayList<>(loader.get()));
+        }
+        return sql2oQueryCaches.cacheFor(datasourceName).get(sql, params, type, ttl, loader);
+    }
+
+    @Override
+    public void invalidateCachedQueries(@Nonnull String table) {
+        invalidateCachedQueries(DefaultSql2oFactory.KEY_DEFAULT, table);
+    }
+
+    @Override
+    public void invalidateCachedQueries(@Nonnull String datasourceName, @Nonnull String table) {
+        requireNonBlank(datasourceName, ERROR_DATASOURCE_NAME_BLANK);
+        requireNonBlank(table, ERROR_TABLE_BLANK);
+        sql2oQueryCaches.invalidate(datasourceName, table);
     }
 
     @Override
@@ -77,20 +374,288 @@ public class DefaultSql2oHandler implements Sql2oHandler {
 
     @Override
     public void closeSql2o(@Nonnull String datasourceName) {
-        Sql2o sql2o = sql2oStorage.get(datasourceName);
+        sql2oExecutors.shutdown(datasourceName);
+        sql2oQueryCaches.clear(datasourceName);
+        // removing first guarantees a single destroy when closing concurrently
+        Sql2o sql2o = sql2oStorage.remove(datasourceName);
         if (sql2o != null) {
+            sql2oInFlight.forget(sql2o);
+            sql2oFactory.destroy(datasourceName, sql2o);
+        }
+    }
+
+    @Override
+    public void reloadSql2o() {
+        reloadSql2o(DefaultSql2oFactory.KEY_DEFAULT);
+    }
+
+    @Override
+    public void reloadSql2o(@Nonnull String datasourceName) {
+        requireNonBlank(datasourceName, ERROR_DATASOURCE_NAME_BLANK);
+        Lock reloadLock = reloadLocks.computeIfAbsent(datasourceName, k -> new ReentrantLock());
+        reloadLock.lock();
+        Lock creation = creationLock.readLock();
+        creation.lock();
+        try {
+            Sql2o current = sql2oStorage.get(datasourceName);
+            if (current == null || shuttingDown) {
+                // not connected, the next callback picks up the current configuration anyway; or closing for good
+                return;
+            }
+
+            Sql2o replacement = sql2oFactory.createReplacement(datasourceName);
+            sql2oStorage.set(datasourceName, replacement);
+            LOG.debug("Reloaded datasource '{}', waiting for callbacks on the previous instance to finish", datasourceName);
+            sql2oInFlight.retire(current, () -> sql2oFactory.destroy(datasourceName, current));
+        } finally {
+            creation.unlock();
+            reloadLock.unlock();
+        }
+    }
+
+    @Override
+    public void shutdownSql2o(@Nonnull Duration timeout) {
+        requireNonNull(timeout, ERROR_TIMEOUT_NULL);
+        long deadline = System.nanoTime() + Math.max(0L, timeout.toNanos());
+        stopCreations(deadline);
+
+        List<Thread> closers = new ArrayList<>();
+        for (String datasourceName : sql2oFactory.getDatasourceNames()) {
+            sql2oExecutors.shutdown(datasourceName);
+            sql2oQueryCaches.clear(datasourceName);
+            Thread closer = new Thread(() -> drainAndClose(datasourceName, deadline), "sql2o-shutdown-" + datasourceName);
+            closer.setDaemon(true);
+            closer.start();
+            closers.add(closer);
+        }
+
+        boolean interrupted = false;
+        for (Thread closer : closers) {
+            try {
+                closer.join();
+            } catch (InterruptedException e) {
+                // the remaining closers run on their own, stop waiting for them
+                interrupted = true;
+                break;
+            }
+        }
+        // no datasource connects anymore, the shared pool sizing thread has nothing left to do
+        sql2oPools.shutdown();
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Refuses new creations and reloads, then waits for those in progress so that every instance is in storage
+     * by the time datasources are closed.
+     */
+    private void stopCreations(long deadline) {
+        Lock lock = creationLock.writeLock();
+        boolean locked = false;
+        try {
+            locked = lock.tryLock(Math.max(0L, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        shuttingDown = true;
+        if (locked) {
+            lock.unlock();
+        } else {
+            LOG.warn("Datasources still being created when the shutdown deadline expired may be left open");
+        }
+    }
+
+    private void drainAndClose(@Nonnull String datasourceName, long deadline) {
+        Sql2o sql2o = sql2oStorage.remove(datasourceName);
+        if (sql2o == null) {
+            return;
+        }
+
+        CountDownLatch drained = new CountDownLatch(1);
+        sql2oInFlight.retire(sql2o, drained::countDown);
+        try {
+            if (!drained.await(Math.max(0L, deadline - System.nanoTime()), TimeUnit.NANOSECONDS)) {
+                LOG.warn("Callbacks on datasource '{}' did not finish before the shutdown deadline, closing it anyway", datasourceName);
+            }
+        } catch (InterruptedException e) {
+            LOG.warn("Interrupted while waiting for callbacks on datasource '{}', closing it anyway", datasourceName);
+        }
+
+        sql2oInFlight.forget(sql2o);
+        try {
             sql2oFactory.destroy(datasourceName, sql2o);
-            sql2oStorage.remove(datasourceName);
+        } catch (RuntimeException e) {
+            LOG.warn("Could not close datasource '{}'", datasourceName, e);
+        }
+    }
+
+    private <T> long executeBatch(@Nonnull String datasourceName, @Nonnull String sql, @Nonnull Supplier<Iterator<T>> items, int batchSize, boolean retryable) {
+        requireNonBlank(sql, ERROR_SQL_BLANK);
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Argument 'batchSize' must be greater than zero");
+        }
+        Long total = executeOnPrimary(datasourceName, (name, sql2o) -> Sql2oStatements.executeBatch(sql2o, sql, items.get(), batchSize), retryable);
+        return total != null ? total : 0L;
+    }
+
+    /**
+     * Submits the callback to the executor of every datasource, which are sized to their connection pools,
+     * then waits for all of them up to the deadline. Callbacks still running when it expires are not
+     * interrupted; they finish in the background and their outcome is discarded.
+     */
+    @Nonnull
+    private <R> Map<String, R> fanOut(@Nonnull Collection<String> datasourceNames, @Nonnull Sql2oCallback<R> callback, long timeoutNanos) {
+        requireNonNull(datasourceNames, "Argument 'datasourceNames' must not be null");
+        requireNonNull(callback, ERROR_CALLBACK_NULL);
+        long deadline = System.nanoTime() + timeoutNanos;
+
+        Map<String, CompletableFuture<R>> futures = new LinkedHashMap<>();
+        for (String datasourceName : datasourceNames) {
+            requireNonBlank(datasourceName, ERROR_DATASOURCE_NAME_BLANK);
+            if (!futures.containsKey(datasourceName)) {
+                futures.put(datasourceName, withSql2oAsync(datasourceName, callback));
+            }
+        }
+
+        Map<String, R> results = new LinkedHashMap<>();
+        Map<String, Throwable> failures = new LinkedHashMap<>();
+        boolean interrupted = false;
+        for (Map.Entry<String, CompletableFuture<R>> entry : futures.entrySet()) {
+            String datasourceName = entry.getKey();
+            CompletableFuture<R> future = entry.getValue();
+            try {
+                if (interrupted && !future.isDone()) {
+                    // stop waiting, but still report every datasource
+                    failures.put(datasourceName, new InterruptedException("Interrupted while waiting for datasource '" + datasourceName + "'"));
+                } else if (timeoutNanos < 0 || future.isDone()) {
+                    results.put(datasourceName, future.get());
+                } else {
+                    results.put(datasourceName, future.get(Math.max(0L, deadline - System.nanoTime()), TimeUnit.NANOSECONDS));
+                }
+            } catch (ExecutionException e) {
+                failures.put(datasourceName, e.getCause());
+            } catch (TimeoutException e) {
+                failures.put(datasourceName, new TimeoutException("Callback on datasource '" + datasourceName + "' did not finish in time"));
+            } catch (InterruptedException e) {
+                interrupted = true;
+                failures.put(datasourceName, e);
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (!failures.isEmpty()) {
+            throw new PartialSql2oException(results, failures);
+        }
+        return results;
+    }
+
+    @Nullable
+    private <R> R executeOnPrimary(@Nonnull String datasourceName, @Nonnull Sql2oCallback<R> callback, boolean retryable) {
+        R result = execute(datasourceName, callback, retryable);
+        sql2oReplicaRouter.primaryUsed(datasourceName);
+        return result;
+    }
+
+    @Nullable
+    private <R> R execute(@Nonnull String datasourceName, @Nonnull Sql2oCallback<R> callback, boolean retryable) {
+        requireNonBlank(datasourceName, ERROR_DATASOURCE_NAME_BLANK);
+        requireNonNull(callback, ERROR_CALLBACK_NULL);
+        Sql2oTransactions.BoundTransaction transaction = sql2oTransactions.current(datasourceName);
+        if (transaction != null) {
+            // part of an enclosing transaction, which already went through retries, circuit breaker and bulkhead
+            return attempt(datasourceName, transaction.getSql2o(), callback);
+        }
+        if (shuttingDown) {
+            throw new UnavailableSql2oException(datasourceName, "the application is shutting down");
+        }
+
+        Sql2oRetries.RetryPolicy retryPolicy = sql2oRetries.policyFor(datasourceName);
+        DatasourceCircuitBreaker circuitBreaker = sql2oCircuitBreakers.breakerFor(datasourceName);
+        // the breaker sees one outcome per call, retried attempts hold on to the same bulkhead permit
+        boolean trial = circuitBreaker.acquire();
+        RuntimeException failure = null;
+        try {
+            for (int attempt = 1; ; attempt++) {
+                RuntimeException attemptFailure;
+                Sql2oInFlight.Entry inFlight = null;
+                try {
+                    inFlight = enterCurrent(datasourceName);
+                    return attempt(datasourceName, inFlight.getSql2o(), callback);
+                } catch (RuntimeException e) {
+                    attemptFailure = e;
+                    if (!retryable || !retryPolicy.shouldRetry(datasourceName, attempt, e)) {
+                        failure = e;
+                        throw e;
+                    }
+                } finally {
+                    if (inFlight != null) {
+                        inFlight.exit();
+                    }
+                }
+
+                LOG.debug("Retrying transient failure on datasource '{}' (attempt {} of {})", datasourceName, attempt + 1, retryPolicy.getMaxAttempts(), attemptFailure);
+                sql2oMetrics.metricsFor(datasourceName).callbackRetried();
+                try {
+                    retryPolicy.backoff(attempt);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    failure = attemptFailure;
+                    throw attemptFailure;
+                }
+            }
+        } finally {
+            circuitBreaker.release(trial, failure);
+        }
+    }
+
+    @Nullable
+    private <R> R attempt(@Nonnull String datasourceName, @Nonnull Sql2o sql2o, @Nonnull Sql2oCallback<R> callback) {
+        DatasourceMetrics metrics = sql2oMetrics.metricsFor(datasourceName);
+        long startedAt = metrics.callbackStarted();
+        try {
+            LOG.debug("Executing statements on datasource '{}'", datasourceName);
+            return callback.handle(datasourceName, sql2o);
+        } catch (Exception e) {
+            metrics.callbackFailed();
+            throw new RuntimeSql2oException(datasourceName, e);
+        } finally {
+            metrics.callbackFinished(startedAt);
+        }
+    }
+
+    @Nonnull
+    private Sql2oInFlight.Entry enterCurrent(@Nonnull String datasourceName) {
+        for (; ; ) {
+            Sql2o sql2o = getSql2o(datasourceName);
+            Sql2oInFlight.Entry inFlight = sql2oInFlight.enter(sql2o);
+            if (sql2oStorage.get(datasourceName) == sql2o) {
+                return inFlight;
+            }
+            // swapped out by a reload in the meantime, callbacks never start on a retired instance
+            inFlight.exit();
+            sql2oInFlight.discardIfIdle(sql2o);
         }
     }
 
     @Nonnull
     private Sql2o getSql2o(@Nonnull String datasourceName) {
         Sql2o sql2o = sql2oStorage.get(datasourceName);
-        if (sql2o == null) {
-            sql2o = sql2oFactory.create(datasourceName);
-            sql2oStorage.set(datasourceName, sql2o);
+        if (sql2o != null) {
+            return sql2o;
+        }
+        // concurrent callers still wait for a single creation in storage, shutdown waits for all of them to finish
+        Lock creation = creationLock.readLock();
+        creation.lock();
+        try {
+            if (shuttingDown) {
+                throw new UnavailableSql2oException(datasourceName, "the application is shutting down");
+            }
+            return sql2oStorage.computeIfAbsent(datasourceName, sql2oFactory::create);
+        } finally {
+            creation.unlock();
         }
-        return sql2o;
     }
 }
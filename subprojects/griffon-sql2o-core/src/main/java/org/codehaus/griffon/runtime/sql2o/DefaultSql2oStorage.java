@@ -17,12 +17,99 @@
  */
 package org.codehaus.griffon.runtime.sql2o;
 
+import griffon.annotations.core.Nonnull;
 import griffon.plugins.sql2o.Sql2oStorage;
 import org.codehaus.griffon.runtime.core.storage.DefaultObjectStorage;
 import org.sql2o.Sql2o;
 
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.function.Function;
+
+import static griffon.util.GriffonNameUtils.requireNonBlank;
+import static java.util.Objects.requireNonNull;
+
 /**
  * @author Andres Almiray
  */
 public class DefaultSql2oStorage extends DefaultObjectStorage<Sql2o> implements Sql2oStorage {
+    private final ConcurrentMap<String, Creation> creations = new ConcurrentHashMap<>();
+
+    @Nonnull
+    @Override
+    public Sql2o computeIfAbsent(@Nonnull String name, @Nonnull Function<String, Sql2o> factory) {
+        requireNonBlank(name, "Argument 'name' must not be blank");
+        requireNonNull(factory, "Argument 'factory' must not be null");
+
+        Sql2o sql2o = get(name);
+        if (sql2o != null) {
+            return sql2o;
+        }
+
+        Creation creation = new Creation(name, () -> create(name, factory));
+        Creation inProgress = creations.putIfAbsent(name, creation);
+        if (inProgress == null) {
+            try {
+                creation.run();
+            } finally {
+                creations.remove(name, creation);
+            }
+            return creation.await();
+        }
+
+        if (inProgress.owner == Thread.currentThread()) {
+            throw new IllegalStateException("Recursive creation of sql2o '" + name + "'");
+        }
+        return inProgress.await();
+    }
+
+    @Nonnull
+    private Sql2o create(@Nonnull String name, @Nonnull Function<String, Sql2o> factory) {
+        // a previous creation may have stored its instance right before being retired
+        Sql2o sql2o = get(name);
+        if (sql2o == null) {
+            sql2o = requireNonNull(factory.apply(name), "Factory returned a null sql2o for '" + name + "'");
+            set(name, sql2o);
+        }
+        return sql2o;
+    }
+
+    private static final class Creation extends FutureTask<Sql2o> {
+        private final String name;
+        private final Thread owner = Thread.currentThread();
+
+        private Creation(@Nonnull String name, @Nonnull Callable<Sql2o> callable) {
+            super(callable);
+            this.name = name;
+        }
+
+        @Nonnull
+        private Sql2o await() {
+            boolean interrupted = false;
+            try {
+                while (true) {
+                    try {
+                        return get();
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                } else if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw new IllegalStateException("Could not create sql2o '" + name + "'", cause);
+            } finally {
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
 }
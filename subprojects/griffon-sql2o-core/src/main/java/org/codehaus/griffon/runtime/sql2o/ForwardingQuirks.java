@@ -0,0 +1,144 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.sql2o;
+
+import griffon.annotations.core.Nonnull;
+import org.sql2o.converters.Converter;
+import org.sql2o.quirks.Quirks;
+import org.sql2o.quirks.parameterparsing.SqlParameterParsingStrategy;
+
+import java.io.InputStream;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.UUID;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Forwards every call to the {@code Quirks} resolved for a datasource. Subclasses override the calls they change.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+abstract class ForwardingQuirks implements Quirks {
+    private final Quirks delegate;
+
+    ForwardingQuirks(@Nonnull Quirks delegate) {
+        this.delegate = requireNonNull(delegate, "Argument 'delegate' must not be null");
+    }
+
+    @Nonnull
+    Quirks getDelegate() {
+        return delegate;
+    }
+
+    @Override
+    public SqlParameterParsingStrategy getSqlParameterParsingStrategy() {
+        return delegate.getSqlParameterParsingStrategy();
+    }
+
+    @Override
+    public <E> Converter<E> converterOf(Class<E> ofClass) {
+        return delegate.converterOf(ofClass);
+    }
+
+    @Override
+    public String getColumnName(ResultSetMetaData meta, int colIdx) throws SQLException {
+        return delegate.getColumnName(meta, colIdx);
+    }
+
+    @Override
+    public boolean returnGeneratedKeysByDefault() {
+        return delegate.returnGeneratedKeysByDefault();
+    }
+
+    @Override
+    public void setParameter(PreparedStatement statement, int paramIdx, Object value) throws SQLException {
+        delegate.setParameter(statement, paramIdx, value);
+    }
+
+    @Override
+    public void setParameter(PreparedStatement statement, int paramIdx, InputStream value) throws SQLException {
+        delegate.setParameter(statement, paramIdx, value);
+    }
+
+    @Override
+    public void setParameter(PreparedStatement statement, int paramIdx, int value) throws SQLException {
+        delegate.setParameter(statement, paramIdx, value);
+    }
+
+    @Override
+    public void setParameter(PreparedStatement statement, int paramIdx, Integer value) throws SQLException {
+        delegate.setParameter(statement, paramIdx, value);
+    }
+
+    @Override
+    public void setParameter(PreparedStatement statement, int paramIdx, long value) throws SQLException {
+        delegate.setParameter(statement, paramIdx, value);
+    }
+
+    @Override
+    public void setParameter(PreparedStatement statement, int paramIdx, Long value) throws SQLException {
+        delegate.setParameter(statement, paramIdx, value);
+    }
+
+    @Override
+    public void setParameter(PreparedStatement statement, int paramIdx, String value) throws SQLException {
+        delegate.setParameter(statement, paramIdx, value);
+    }
+
+    @Override
+    public void setParameter(PreparedStatement statement, int paramIdx, Timestamp value) throws SQLException {
+        delegate.setParameter(statement, paramIdx, value);
+    }
+
+    @Override
+    public void setParameter(PreparedStatement statement, int paramIdx, Time value) throws SQLException {
+        delegate.setParameter(statement, paramIdx, value);
+    }
+
+    @Override
+    public void setParameter(PreparedStatement statement, int paramIdx, boolean value) throws SQLException {
+        delegate.setParameter(statement, paramIdx, value);
+    }
+
+    @Override
+    public void setParameter(PreparedStatement statement, int paramIdx, Boolean value) throws SQLException {
+        delegate.setParameter(statement, paramIdx, value);
+    }
+
+    @Override
+    public void setParameter(PreparedStatement statement, int paramIdx, UUID value) throws SQLException {
+        delegate.setParameter(statement, paramIdx, value);
+    }
+
+    @Override
+    public Object getRSVal(ResultSet rs, int idx) throws SQLException {
+        return delegate.getRSVal(rs, idx);
+    }
+
+    @Override
+    public void closeStatement(Statement statement) throws SQLException {
+        delegate.closeStatement(statement);
+    }
+}
@@ -0,0 +1,45 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.sql2o;
+
+import griffon.annotations.core.Nonnull;
+import org.sql2o.quirks.Quirks;
+import org.sql2o.quirks.parameterparsing.SqlParameterParsingStrategy;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Forwards every call to the {@code Quirks} resolved for a datasource except for named
+ * parameter parsing, which is served from a {@code CachingSqlParameterParsingStrategy}.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+class ParsedSqlCachingQuirks extends ForwardingQuirks {
+    private final SqlParameterParsingStrategy parsingStrategy;
+
+    ParsedSqlCachingQuirks(@Nonnull Quirks delegate, @Nonnull CachingSqlParameterParsingStrategy parsingStrategy) {
+        super(delegate);
+        this.parsingStrategy = requireNonNull(parsingStrategy, "Argument 'parsingStrategy' must not be null");
+    }
+
+    @Override
+    public SqlParameterParsingStrategy getSqlParameterParsingStrategy() {
+        return parsingStrategy;
+    }
+}
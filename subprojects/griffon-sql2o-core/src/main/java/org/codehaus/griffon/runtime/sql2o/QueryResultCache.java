@@ -0,0 +1,208 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.sql2o;
+
+import griffon.annotations.core.Nonnull;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Read-through cache of query results for a single datasource. Entries are keyed by SQL text,
+ * parameter values and row type, expire after the TTL given when they were loaded, and are evicted
+ * in least recently used order once either the entry count or the approximate size in bytes goes
+ * over its limit. Each entry is tagged with the tables named after {@code FROM} and {@code JOIN}
+ * in its SQL so that writers can invalidate everything that read from a table. Rows are handed out
+ * as loaded, not copied, so callers must not modify them.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+class QueryResultCache {
+    private static final Pattern TABLE_REFERENCE = Pattern.compile("(?i)\\b(?:from|join)\\s+([\\w$.\"`\\[\\]]+)");
+
+    private final int maxEntries;
+    private final long maxBytes;
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes;
+    private long generation;
+
+    QueryResultCache(int maxEntries, long maxBytes) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("Argument 'maxEntries' must be greater than zero");
+        }
+        if (maxBytes < 1) {
+            throw new IllegalArgumentException("Argument 'maxBytes' must be greater than zero");
+        }
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+    }
+
+    @Nonnull
+    @SuppressWarnings("unchecked")
+    <T> List<T> get(@Nonnull String sql, @Nonnull Map<String, ?> params, @Nonnull Class<T> type, @Nonnull Duration ttl, @Nonnull Supplier<List<T>> loader) {
+        Key key = new Key(sql, params, type);
+        long observedGeneration;
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null) {
+                if (System.nanoTime() - entry.expiresAt < 0) {
+                    return (List<T>) entry.rows;
+                }
+                remove(key);
+            }
+            observedGeneration = generation;
+        }
+
+        List<T> rows = Collections.unmodifiableList(new ArrayList<>(loader.get()));
+        long size = SizeEstimator.estimate(sql) + SizeEstimator.estimateRows(rows);
+        if (size > maxBytes) {
+            return rows;
+        }
+
+        Entry entry = new Entry(rows, tablesOf(sql), System.nanoTime() + ttl.toNanos(), size);
+        synchronized (this) {
+            // an invalidation while loading may have made these rows stale already
+            if (observedGeneration == generation) {
+                remove(key);
+                entries.put(key, entry);
+                bytes += size;
+                evict();
+            }
+        }
+        return rows;
+    }
+
+    synchronized void invalidate(@Nonnull String table) {
+        generation++;
+        String tag = normalize(table);
+        for (Iterator<Entry> it = entries.values().iterator(); it.hasNext(); ) {
+            Entry entry = it.next();
+            if (entry.tables.contains(tag)) {
+                bytes -= entry.bytes;
+                it.remove();
+            }
+        }
+    }
+
+    synchronized void clear() {
+        generation++;
+        entries.clear();
+        bytes = 0;
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+    synchronized long bytes() {
+        return bytes;
+    }
+
+    private void remove(@Nonnull Key key) {
+        Entry previous = entries.remove(key);
+        if (previous != null) {
+            bytes -= previous.bytes;
+        }
+    }
+
+    private void evict() {
+        Iterator<Entry> it = entries.values().iterator();
+        while ((entries.size() > maxEntries || bytes > maxBytes) && it.hasNext()) {
+            bytes -= it.next().bytes;
+            it.remove();
+        }
+    }
+
+    @Nonnull
+    static Set<String> tablesOf(@Nonnull String sql) {
+        Set<String> tables = new HashSet<>();
+        Matcher matcher = TABLE_REFERENCE.matcher(sql);
+        while (matcher.find()) {
+            tables.add(normalize(matcher.group(1)));
+        }
+        return tables;
+    }
+
+    @Nonnull
+    private static String normalize(@Nonnull String table) {
+        String name = table.trim();
+        int dot = name.lastIndexOf('.');
+        if (dot > -1) {
+            name = name.substring(dot + 1);
+        }
+        return name.replaceAll("[\"`\\[\\]]", "").toLowerCase(Locale.ENGLISH);
+    }
+
+    private static final class Key {
+        private final String sql;
+        private final Map<String, ?> params;
+        private final Class<?> type;
+        private final int hash;
+
+        private Key(@Nonnull String sql, @Nonnull Map<String, ?> params, @Nonnull Class<?> type) {
+            this.sql = sql;
+            this.params = new HashMap<>(params);
+            this.type = type;
+            this.hash = Objects.hash(sql, this.params, type);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key other = (Key) o;
+            return hash == other.hash &&
+                type == other.type &&
+                sql.equals(other.sql) &&
+                params.equals(other.params);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private static final class Entry {
+        private final List<?> rows;
+        private final Set<String> tables;
+        private final long expiresAt;
+        private final long bytes;
+
+        private Entry(@Nonnull List<?> rows, @Nonnull Set<String> tables, long expiresAt, long bytes) {
+            this.rows = rows;
+            this.tables = tables;
+            this.expiresAt = expiresAt;
+            this.bytes = bytes;
+        }
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.sql2o;
+
+import griffon.annotations.core.Nonnull;
+import griffon.plugins.sql2o.Sql2oRowMappers;
+import org.sql2o.quirks.Quirks;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Forwards every call to the {@code Quirks} of a datasource. It only exists so that code holding
+ * a {@code Sql2o} instance can find the {@code Sql2oRowMappers} configured for it. Created by
+ * {@code DefaultSql2oFactory}, not meant to be used directly.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public final class RowMapperQuirks extends ForwardingQuirks implements Sql2oRowMappers.Holder {
+    private final Sql2oRowMappers rowMappers;
+
+    public RowMapperQuirks(@Nonnull Quirks delegate, @Nonnull Sql2oRowMappers rowMappers) {
+        super(delegate);
+        this.rowMappers = requireNonNull(rowMappers, "Argument 'rowMappers' must not be null");
+    }
+
+    @Nonnull
+    @Override
+    public Sql2oRowMappers getRowMappers() {
+        return rowMappers;
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.sql2o;
+
+import griffon.annotations.core.Nonnull;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.time.temporal.Temporal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Rough estimate of how much heap a query result retains. Only the first rows are walked and the
+ * figure is extrapolated to the rest, so the cost stays flat no matter how many rows were fetched.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+final class SizeEstimator {
+    private static final int SAMPLE_SIZE = 32;
+    private static final int MAX_DEPTH = 3;
+    private static final long OBJECT_OVERHEAD = 16L;
+    private static final long REFERENCE_SIZE = 8L;
+
+    private static final ClassValue<Field[]> FIELDS = new ClassValue<Field[]>() {
+        @Override
+        protected Field[] computeValue(Class<?> type) {
+            List<Field> fields = new ArrayList<>();
+            for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+                for (Field field : c.getDeclaredFields()) {
+                    if (!Modifier.isStatic(field.getModifiers()) && !field.isSynthetic()) {
+                        try {
+                            field.setAccessible(true);
+                            fields.add(field);
+                        } catch (RuntimeException e) {
+                            // inaccessible (e.g. module encapsulated) fields count as a plain reference
+                        }
+                    }
+                }
+            }
+            return fields.toArray(new Field[0]);
+        }
+    };
+
+    private SizeEstimator() {
+        // prevent instantiation
+    }
+
+    static long estimateRows(@Nonnull List<?> rows) {
+        int sampled = Math.min(rows.size(), SAMPLE_SIZE);
+        long total = OBJECT_OVERHEAD + REFERENCE_SIZE * rows.size();
+        if (sampled == 0) {
+            return total;
+        }
+        long sample = 0;
+        for (int i = 0; i < sampled; i++) {
+            sample += estimate(rows.get(i), 0);
+        }
+        return total + sample * rows.size() / sampled;
+    }
+
+    static long estimate(Object value) {
+        return estimate(value, 0);
+    }
+
+    private static long estimate(Object value, int depth) {
+        if (value == null) {
+            return 0L;
+        }
+        if (value instanceof CharSequence) {
+            return OBJECT_OVERHEAD + 24L + 2L * ((CharSequence) value).length();
+        }
+        if (value instanceof Number || value instanceof Boolean || value instanceof Character) {
+            return OBJECT_OVERHEAD + REFERENCE_SIZE;
+        }
+        if (value instanceof Date || value instanceof Temporal || value instanceof UUID || value instanceof Enum) {
+            return OBJECT_OVERHEAD + 2 * REFERENCE_SIZE;
+        }
+        if (value instanceof byte[]) {
+            return OBJECT_OVERHEAD + ((byte[]) value).length;
+        }
+        if (depth >= MAX_DEPTH) {
+            return OBJECT_OVERHEAD;
+        }
+        if (value instanceof Map) {
+            long size = OBJECT_OVERHEAD;
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                size += 2 * OBJECT_OVERHEAD + estimate(entry.getKey(), depth + 1) + estimate(entry.getValue(), depth + 1);
+            }
+            return size;
+        }
+        if (value instanceof Collection) {
+            long size = OBJECT_OVERHEAD;
+            for (Object element : (Collection<?>) value) {
+                size += REFERENCE_SIZE + estimate(element, depth + 1);
+            }
+            return size;
+        }
+        if (value.getClass().isArray()) {
+            return OBJECT_OVERHEAD + REFERENCE_SIZE * Array.getLength(value);
+        }
+
+        long size = OBJECT_OVERHEAD;
+        for (Field field : FIELDS.get(value.getClass())) {
+            size += REFERENCE_SIZE;
+            if (!field.getType().isPrimitive()) {
+                try {
+                    size += estimate(field.get(value), depth + 1);
+                } catch (IllegalAccessException e) {
+                    // counted as a plain reference
+                }
+            }
+        }
+        return size;
+    }
+}
@@ -27,16 +27,27 @@ import griffon.plugins.sql2o.Sql2oCallback;
 import griffon.plugins.sql2o.Sql2oFactory;
 import griffon.plugins.sql2o.Sql2oHandler;
 import griffon.plugins.sql2o.Sql2oStorage;
+import griffon.plugins.sql2o.exceptions.PartialSql2oException;
 import org.codehaus.griffon.runtime.core.addon.AbstractGriffonAddon;
+import org.codehaus.griffon.runtime.sql2o.monitor.Sql2oCircuitBreakerMonitor;
+import org.codehaus.griffon.runtime.sql2o.monitor.Sql2oPoolMonitor;
+import org.codehaus.griffon.runtime.sql2o.monitor.Sql2oQueryMetricsMonitor;
 import org.codehaus.griffon.runtime.sql2o.monitor.Sql2oStorageMonitor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.sql2o.Sql2o;
 
 import javax.application.event.EventHandler;
 import javax.inject.Inject;
 import javax.inject.Named;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeoutException;
 
-import static griffon.util.ConfigUtils.getConfigValueAsBoolean;
+import static griffon.util.ConfigUtils.getConfigValueAsLong;
+import static griffon.util.ConfigUtils.getConfigValueAsString;
 
 /**
  * @author Andres Almiray
@@ -44,6 +55,11 @@ import static griffon.util.ConfigUtils.getConfigValueAsBoolean;
 @DependsOn("datasource")
 @Named("sql2o")
 public class Sql2oAddon extends AbstractGriffonAddon {
+    private static final Logger LOG = LoggerFactory.getLogger(Sql2oAddon.class);
+    private static final String KEY_CONNECT_ON_STARTUP = "connect_on_startup";
+    private static final String KEY_SHUTDOWN_TIMEOUT = "shutdownTimeoutMs";
+    private static final long DEFAULT_SHUTDOWN_TIMEOUT_MILLIS = 10000L;
+
     @Inject
     private Sql2oHandler sql2oHandler;
 
@@ -53,36 +69,96 @@ public class Sql2oAddon extends AbstractGriffonAddon {
     @Inject
     private Sql2oStorage sql2oStorage;
 
+    @Inject
+    private Sql2oMetrics sql2oMetrics;
+
+    @Inject
+    private Sql2oCircuitBreakers sql2oCircuitBreakers;
+
+    @Inject
+    private Sql2oPools sql2oPools;
+
     @Inject
     private MBeanManager mbeanManager;
 
     @Inject
     private Metadata metadata;
 
+    private final Sql2oCallback<Void> warmupCallback = new Sql2oCallback<Void>() {
+        @Override
+        public Void handle(@Nonnull String dataSourceName, @Nonnull Sql2o sql2o) {
+            Sql2oWarmup.warmUp(dataSourceName, sql2o, sql2oFactory.getConfigurationFor(dataSourceName));
+            return null;
+        }
+    };
+
     @Override
     public void init(@Nonnull GriffonApplication application) {
         mbeanManager.registerMBean(new Sql2oStorageMonitor(metadata, sql2oStorage));
+        for (String dataSourceName : sql2oFactory.getDatasourceNames()) {
+            mbeanManager.registerMBean(new Sql2oQueryMetricsMonitor(metadata, dataSourceName, sql2oMetrics.metricsFor(dataSourceName)));
+            mbeanManager.registerMBean(new Sql2oCircuitBreakerMonitor(metadata, dataSourceName, sql2oCircuitBreakers.breakerFor(dataSourceName)));
+            mbeanManager.registerMBean(new Sql2oPoolMonitor(metadata, dataSourceName, sql2oPools.poolFor(dataSourceName)));
+        }
     }
 
     @EventHandler
     public void handleStartupStartEvent(@Nonnull StartupStartEvent event) {
+        List<String> dataSourceNames = new ArrayList<>();
+        long timeoutMillis = 0L;
         for (String dataSourceName : sql2oFactory.getDatasourceNames()) {
             Map<String, Object> config = sql2oFactory.getConfigurationFor(dataSourceName);
-            if (getConfigValueAsBoolean(config, "connect_on_startup", false)) {
-                sql2oHandler.withSql2o(dataSourceName, new Sql2oCallback<Void>() {
-                    @Override
-                    public Void handle(@Nonnull String dataSourceName, @Nonnull Sql2o sql2o) {
-                        return null;
-                    }
-                });
+            String connectOnStartup = getConfigValueAsString(config, KEY_CONNECT_ON_STARTUP, "false").trim().toLowerCase();
+            switch (connectOnStartup) {
+                case "true":
+                    dataSourceNames.add(dataSourceName);
+                    timeoutMillis = Math.max(timeoutMillis, Sql2oWarmup.timeoutMillis(dataSourceName, config));
+                    break;
+                case "background":
+                    warmUpInBackground(dataSourceName);
+                    break;
+                case "false":
+                    break;
+                default:
+                    throw new IllegalArgumentException("Invalid " + KEY_CONNECT_ON_STARTUP + " '" + connectOnStartup + "' for datasource '" + dataSourceName + "'. Valid values are [true, false, background]");
+            }
+        }
+        if (dataSourceNames.isEmpty()) {
+            return;
+        }
+
+        // connect and warm up every datasource in parallel, each on its own executor
+        try {
+            sql2oHandler.withAllSql2o(dataSourceNames, Duration.ofMillis(timeoutMillis), warmupCallback);
+        } catch (PartialSql2oException e) {
+            for (Map.Entry<String, Throwable> failure : e.getFailures().entrySet()) {
+                if (!(failure.getValue() instanceof TimeoutException)) {
+                    throw e;
+                }
+                LOG.warn("Datasource '{}' is still warming up after {} ms, continuing startup", failure.getKey(), timeoutMillis);
             }
         }
     }
 
+    private void warmUpInBackground(@Nonnull String dataSourceName) {
+        // callers arriving while the Sql2o instance is being created wait for this creation instead of starting their own
+        sql2oHandler.withSql2oAsync(dataSourceName, warmupCallback).whenComplete((result, failure) -> {
+            if (failure != null) {
+                LOG.warn("Background initialization of datasource '{}' failed, it will be retried on first use", dataSourceName, failure);
+            } else {
+                LOG.debug("Background initialization of datasource '{}' finished", dataSourceName);
+            }
+        });
+    }
+
     @Override
     public void onShutdown(@Nonnull GriffonApplication application) {
+        // running callbacks get as long as the most patient datasource allows, all of them are closed in parallel
+        long timeoutMillis = 0L;
         for (String dataSourceName : sql2oFactory.getDatasourceNames()) {
-            sql2oHandler.closeSql2o(dataSourceName);
+            Map<String, Object> config = sql2oFactory.getConfigurationFor(dataSourceName);
+            timeoutMillis = Math.max(timeoutMillis, getConfigValueAsLong(config, KEY_SHUTDOWN_TIMEOUT, DEFAULT_SHUTDOWN_TIMEOUT_MILLIS));
         }
+        sql2oHandler.shutdownSql2o(Duration.ofMillis(timeoutMillis));
     }
 }
@@ -0,0 +1,317 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.sql2o;
+
+import griffon.annotations.core.Nonnull;
+import griffon.annotations.core.Nullable;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sql2o.Connection;
+import org.sql2o.Sql2o;
+import org.sql2o.Sql2oException;
+import org.sql2o.converters.Converter;
+import org.sql2o.quirks.OracleQuirks;
+import org.sql2o.quirks.PostgresQuirks;
+import org.sql2o.quirks.Quirks;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import static griffon.util.ConfigUtils.getConfigValue;
+import static griffon.util.ConfigUtils.getConfigValueAsInt;
+import static griffon.util.ConfigUtils.getConfigValueAsString;
+
+/**
+ * Loads rows into a table with the fastest statement the datasource's dialect offers: {@code COPY ... FROM STDIN}
+ * on PostgreSQL, JDBC batches on Oracle (which the driver sends as a single array-bound execution) and multi-row
+ * {@code INSERT ... VALUES} everywhere else. Every row is written inside a single transaction.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+final class Sql2oBulkLoader {
+    private static final Logger LOG = LoggerFactory.getLogger(Sql2oBulkLoader.class);
+    private static final String KEY_BULK_LOAD = "bulkLoad";
+    private static final int DEFAULT_ROWS_PER_STATEMENT = 500;
+    // stays below SQL Server's limit of 2100 parameters per statement
+    private static final int DEFAULT_MAX_PARAMETERS = 2000;
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+    enum Strategy {
+        COPY, BATCH, VALUES
+    }
+
+    private final Strategy strategy;
+    private final int rowsPerStatement;
+    private final int maxParameters;
+
+    private Sql2oBulkLoader(@Nonnull Strategy strategy, int rowsPerStatement, int maxParameters) {
+        this.strategy = strategy;
+        this.rowsPerStatement = rowsPerStatement;
+        this.maxParameters = maxParameters;
+    }
+
+    /**
+     * Reads the {@code bulkLoad} block of a datasource. Its {@code strategy} is picked from the datasource's quirks
+     * unless set explicitly to {@code copy}, {@code batch} or {@code values}.
+     */
+    @Nonnull
+    static Sql2oBulkLoader of(@Nonnull String datasourceName, @Nonnull Map<String, Object> config) {
+        Map<String, Object> bulkLoad = getConfigValue(config, KEY_BULK_LOAD, Collections.<String, Object>emptyMap());
+        int rowsPerStatement = getConfigValueAsInt(bulkLoad, "rowsPerStatement", DEFAULT_ROWS_PER_STATEMENT);
+        int maxParameters = getConfigValueAsInt(bulkLoad, "maxParameters", DEFAULT_MAX_PARAMETERS);
+        if (rowsPerStatement < 1 || maxParameters < 1) {
+            throw new IllegalArgumentException("Invalid bulkLoad settings for datasource '" + datasourceName + "'");
+        }
+
+        String strategy = getConfigValueAsString(bulkLoad, "strategy", "auto");
+        if ("auto".equalsIgnoreCase(strategy)) {
+            return new Sql2oBulkLoader(strategyFor(DefaultSql2oFactory.resolveQuirks(config)), rowsPerStatement, maxParameters);
+        }
+        try {
+            return new Sql2oBulkLoader(Strategy.valueOf(strategy.toUpperCase()), rowsPerStatement, maxParameters);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid bulkLoad strategy '" + strategy + "' for datasource '" + datasourceName + "'");
+        }
+    }
+
+    @Nonnull
+    private static Strategy strategyFor(@Nonnull Quirks quirks) {
+        if (quirks instanceof PostgresQuirks) {
+            return Strategy.COPY;
+        }
+        if (quirks instanceof OracleQuirks) {
+            // Oracle has no multi-row VALUES, but executes a batch as one array-bound round trip
+            return Strategy.BATCH;
+        }
+        return Strategy.VALUES;
+    }
+
+    @Nonnull
+    Strategy getStrategy() {
+        return strategy;
+    }
+
+    /**
+     * Writes every row in a single transaction that is rolled back if any statement fails.
+     *
+     * @return the number of rows written
+     */
+    long load(@Nonnull Sql2o sql2o, @Nonnull String table, @Nonnull List<String> columns, @Nonnull Iterator<Object[]> rows) {
+        try (Connection connection = sql2o.beginTransaction()) {
+            java.sql.Connection jdbcConnection = connection.getJdbcConnection();
+            Quirks quirks = sql2o.getQuirks();
+            long total;
+            if (strategy == Strategy.COPY && jdbcConnection.isWrapperFor(PGConnection.class)) {
+                total = copy(jdbcConnection, quirks, table, columns, rows);
+            } else if (strategy == Strategy.BATCH) {
+                total = batch(jdbcConnection, quirks, table, columns, rows);
+            } else {
+                if (strategy == Strategy.COPY) {
+                    LOG.debug("Connection of table '{}' is not a PostgreSQL connection, falling back to multi-row inserts", table);
+                }
+                total = values(jdbcConnection, quirks, table, columns, rows);
+            }
+            connection.commit();
+            return total;
+        } catch (SQLException e) {
+            throw new Sql2oException("Error while loading rows into " + table, e);
+        }
+    }
+
+    private long values(@Nonnull java.sql.Connection connection, @Nonnull Quirks quirks, @Nonnull String table, @Nonnull List<String> columns, @Nonnull Iterator<Object[]> rows) throws SQLException {
+        int chunkSize = Math.max(1, Math.min(rowsPerStatement, maxParameters / columns.size()));
+        Object[][] chunk = new Object[chunkSize][];
+        long total = 0;
+        long index = 0;
+        try (PreparedStatement statement = connection.prepareStatement(insert(table, columns, chunkSize))) {
+            int pending = 0;
+            while (rows.hasNext()) {
+                chunk[pending++] = checkRow(rows.next(), columns, index++);
+                if (pending == chunkSize) {
+                    bind(statement, quirks, chunk, pending);
+                    total += statement.executeUpdate();
+                    pending = 0;
+                }
+            }
+            if (pending > 0) {
+                // the last chunk is shorter, it needs a statement of its own
+                try (PreparedStatement remainder = connection.prepareStatement(insert(table, columns, pending))) {
+                    bind(remainder, quirks, chunk, pending);
+                    total += remainder.executeUpdate();
+                }
+            }
+        }
+        return total;
+    }
+
+    private long batch(@Nonnull java.sql.Connection connection, @Nonnull Quirks quirks, @Nonnull String table, @Nonnull List<String> columns, @Nonnull Iterator<Object[]> rows) throws SQLException {
+        Object[][] row = new Object[1][];
+        long total = 0;
+        long index = 0;
+        try (PreparedStatement statement = connection.prepareStatement(insert(table, columns, 1))) {
+            int pending = 0;
+            while (rows.hasNext()) {
+                row[0] = checkRow(rows.next(), columns, index++);
+                bind(statement, quirks, row, 1);
+                statement.addBatch();
+                if (++pending == rowsPerStatement) {
+                    total += flush(statement);
+                    pending = 0;
+                }
+            }
+            if (pending > 0) {
+                total += flush(statement);
+            }
+        }
+        return total;
+    }
+
+    private long copy(@Nonnull java.sql.Connection connection, @Nonnull Quirks quirks, @Nonnull String table, @Nonnull List<String> columns, @Nonnull Iterator<Object[]> rows) throws SQLException {
+        String sql = "COPY " + table + " (" + String.join(", ", columns) + ") FROM STDIN WITH (FORMAT csv)";
+        CopyIn copyIn = connection.unwrap(PGConnection.class).getCopyAPI().copyIn(sql);
+        try {
+            StringBuilder buffer = new StringBuilder(COPY_BUFFER_SIZE + 1024);
+            long index = 0;
+            while (rows.hasNext()) {
+                Object[] row = checkRow(rows.next(), columns, index++);
+                for (int i = 0; i < row.length; i++) {
+                    if (i > 0) {
+                        buffer.append(',');
+                    }
+                    appendCsv(buffer, toDatabaseParam(quirks, row[i]));
+                }
+                buffer.append('\n');
+                if (buffer.length() >= COPY_BUFFER_SIZE) {
+                    write(copyIn, buffer);
+                }
+            }
+            write(copyIn, buffer);
+            return copyIn.endCopy();
+        } finally {
+            if (copyIn.isActive()) {
+                copyIn.cancelCopy();
+            }
+        }
+    }
+
+    @Nonnull
+    private static String insert(@Nonnull String table, @Nonnull List<String> columns, int rowCount) {
+        StringBuilder row = new StringBuilder("(");
+        for (int i = 0; i < columns.size(); i++) {
+            row.append(i > 0 ? ", ?" : "?");
+        }
+        row.append(')');
+
+        StringBuilder sql = new StringBuilder("INSERT INTO ").append(table)
+            .append(" (").append(String.join(", ", columns)).append(") VALUES ");
+        for (int i = 0; i < rowCount; i++) {
+            if (i > 0) {
+                sql.append(", ");
+            }
+            sql.append(row);
+        }
+        return sql.toString();
+    }
+
+    @Nonnull
+    private static Object[] checkRow(@Nullable Object[] row, @Nonnull List<String> columns, long index) {
+        if (row == null || row.length != columns.size()) {
+            throw new IllegalArgumentException("Row " + index + " has " + (row == null ? 0 : row.length) + " values but " + columns.size() + " columns were given");
+        }
+        return row;
+    }
+
+    private static void bind(@Nonnull PreparedStatement statement, @Nonnull Quirks quirks, @Nonnull Object[][] chunk, int rowCount) throws SQLException {
+        int parameter = 1;
+        for (int r = 0; r < rowCount; r++) {
+            for (Object value : chunk[r]) {
+                quirks.setParameter(statement, parameter++, toDatabaseParam(quirks, value));
+            }
+            // let bound rows be collected while the next chunk fills up
+            chunk[r] = null;
+        }
+    }
+
+    /**
+     * Converts a value the same way {@code Query.addParameter} does, so bulk loads accept the same types.
+     */
+    @SuppressWarnings("unchecked")
+    @Nullable
+    private static Object toDatabaseParam(@Nonnull Quirks quirks, @Nullable Object value) {
+        if (value == null) {
+            return null;
+        }
+        Converter<Object> converter = (Converter<Object>) quirks.converterOf(value.getClass());
+        return converter != null ? converter.toDatabaseParam(value) : value;
+    }
+
+    private static void appendCsv(@Nonnull StringBuilder buffer, @Nullable Object value) {
+        if (value == null) {
+            // an unquoted empty field is NULL, a quoted one is an empty string
+            return;
+        }
+        if (value instanceof Number || value instanceof Boolean) {
+            buffer.append(value);
+        } else if (value instanceof byte[]) {
+            buffer.append("\\x");
+            for (byte b : (byte[]) value) {
+                buffer.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+        } else {
+            String text = String.valueOf(value);
+            buffer.append('"');
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                if (c == '"') {
+                    buffer.append('"');
+                }
+                buffer.append(c);
+            }
+            buffer.append('"');
+        }
+    }
+
+    private static void write(@Nonnull CopyIn copyIn, @Nonnull StringBuilder buffer) throws SQLException {
+        if (buffer.length() > 0) {
+            byte[] bytes = buffer.toString().getBytes(StandardCharsets.UTF_8);
+            copyIn.writeToCopy(bytes, 0, bytes.length);
+            buffer.setLength(0);
+        }
+    }
+
+    private static long flush(@Nonnull PreparedStatement statement) throws SQLException {
+        long total = 0;
+        for (int count : statement.executeBatch()) {
+            if (count > 0) {
+                total += count;
+            } else if (count == Statement.SUCCESS_NO_INFO) {
+                total++;
+            }
+        }
+        return total;
+    }
+}
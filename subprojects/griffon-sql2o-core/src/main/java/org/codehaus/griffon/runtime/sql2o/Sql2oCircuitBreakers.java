@@ -0,0 +1,114 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.sql2o;
+
+import griffon.annotations.core.Nonnull;
+import griffon.core.GriffonApplication;
+import griffon.core.event.Event;
+import griffon.plugins.sql2o.Sql2oFactory;
+import griffon.plugins.sql2o.events.Sql2oCircuitClosedEvent;
+import griffon.plugins.sql2o.events.Sql2oCircuitOpenEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import static griffon.util.ConfigUtils.getConfigValue;
+import static griffon.util.ConfigUtils.getConfigValueAsInt;
+import static griffon.util.ConfigUtils.getConfigValueAsLong;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Holds the {@code DatasourceCircuitBreaker} of every datasource, created on first use from its
+ * {@code circuitBreaker} and {@code bulkhead} blocks. Both are off unless configured. State changes are
+ * logged and published as {@code Sql2oCircuitOpenEvent} and {@code Sql2oCircuitClosedEvent}.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public class Sql2oCircuitBreakers {
+    private static final Logger LOG = LoggerFactory.getLogger(Sql2oCircuitBreakers.class);
+    private static final String KEY_CIRCUIT_BREAKER = "circuitBreaker";
+    private static final String KEY_BULKHEAD = "bulkhead";
+
+    private final Sql2oFactory sql2oFactory;
+    private final GriffonApplication application;
+    private final ConcurrentMap<String, DatasourceCircuitBreaker> breakers = new ConcurrentHashMap<>();
+    private final DatasourceCircuitBreaker.StateListener listener = new DatasourceCircuitBreaker.StateListener() {
+        @Override
+        public void circuitOpened(@Nonnull String datasourceName) {
+            LOG.warn("Circuit breaker of datasource '{}' is now open", datasourceName);
+            publish(Sql2oCircuitOpenEvent.of(datasourceName));
+        }
+
+        @Override
+        public void circuitClosed(@Nonnull String datasourceName) {
+            LOG.info("Circuit breaker of datasource '{}' is now closed", datasourceName);
+            publish(Sql2oCircuitClosedEvent.of(datasourceName));
+        }
+    };
+
+    @Inject
+    public Sql2oCircuitBreakers(@Nonnull Sql2oFactory sql2oFactory, @Nonnull GriffonApplication application) {
+        this.sql2oFactory = requireNonNull(sql2oFactory, "Argument 'sql2oFactory' must not be null");
+        this.application = requireNonNull(application, "Argument 'application' must not be null");
+    }
+
+    /**
+     * Creates breakers whose state changes are only logged.
+     */
+    Sql2oCircuitBreakers(@Nonnull Sql2oFactory sql2oFactory) {
+        this.sql2oFactory = requireNonNull(sql2oFactory, "Argument 'sql2oFactory' must not be null");
+        this.application = null;
+    }
+
+    @Nonnull
+    DatasourceCircuitBreaker breakerFor(@Nonnull String datasourceName) {
+        DatasourceCircuitBreaker breaker = breakers.get(datasourceName);
+        if (breaker == null) {
+            breaker = breakers.computeIfAbsent(datasourceName, this::createBreaker);
+        }
+        return breaker;
+    }
+
+    @Nonnull
+    private DatasourceCircuitBreaker createBreaker(@Nonnull String datasourceName) {
+        Map<String, Object> config = sql2oFactory.getConfigurationFor(datasourceName);
+        Map<String, Object> circuitBreaker = getConfigValue(config, KEY_CIRCUIT_BREAKER, Collections.<String, Object>emptyMap());
+        Map<String, Object> bulkhead = getConfigValue(config, KEY_BULKHEAD, Collections.<String, Object>emptyMap());
+
+        int failureThreshold = getConfigValueAsInt(circuitBreaker, "failureThreshold", 0);
+        long openMillis = getConfigValueAsLong(circuitBreaker, "openMs", 30000L);
+        int maxConcurrent = getConfigValueAsInt(bulkhead, "maxConcurrent", 0);
+        long maxWaitMillis = getConfigValueAsLong(bulkhead, "maxWaitMs", 0L);
+        if (failureThreshold < 0 || openMillis < 0L || maxConcurrent < 0 || maxWaitMillis < 0L) {
+            throw new IllegalArgumentException("Invalid circuitBreaker/bulkhead settings for datasource '" + datasourceName + "'");
+        }
+        return new DatasourceCircuitBreaker(datasourceName, failureThreshold, openMillis, maxConcurrent, maxWaitMillis, listener);
+    }
+
+    private void publish(@Nonnull Event event) {
+        if (application != null) {
+            application.getEventRouter().publishEventAsync(event);
+        }
+    }
+}
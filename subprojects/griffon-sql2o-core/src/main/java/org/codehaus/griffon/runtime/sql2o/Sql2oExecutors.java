@@ -0,0 +1,128 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.sql2o;
+
+import griffon.annotations.core.Nonnull;
+import griffon.plugins.sql2o.Sql2oFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static griffon.util.ConfigUtils.getConfigValue;
+import static griffon.util.ConfigUtils.getConfigValueAsInt;
+import static griffon.util.ConfigUtils.getConfigValueAsString;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Keeps one executor per datasource for running callbacks off the caller's thread. Each executor
+ * has as many threads as the datasource's connection pool has connections, so work that can't get
+ * a connection waits in the executor's queue rather than parking threads inside the pool.
+ * <p>
+ * Setting {@code executor = 'virtual'} on a datasource runs every callback on its own virtual thread
+ * instead (Java 21+), with concurrency capped at the same pool size.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+class Sql2oExecutors {
+    private static final Logger LOG = LoggerFactory.getLogger(Sql2oExecutors.class);
+    private static final int DEFAULT_MAXIMUM_POOL_SIZE = 10;
+    private static final long KEEP_ALIVE_SECONDS = 60L;
+    private static final String EXECUTOR_PLATFORM = "platform";
+    private static final String EXECUTOR_VIRTUAL = "virtual";
+
+    private final Sql2oFactory sql2oFactory;
+    private final ConcurrentMap<String, ExecutorService> executors = new ConcurrentHashMap<>();
+
+    Sql2oExecutors(@Nonnull Sql2oFactory sql2oFactory) {
+        this.sql2oFactory = requireNonNull(sql2oFactory, "Argument 'sql2oFactory' must not be null");
+    }
+
+    @Nonnull
+    ExecutorService executorFor(@Nonnull String datasourceName) {
+        ExecutorService executor = executors.get(datasourceName);
+        if (executor == null) {
+            executor = executors.computeIfAbsent(datasourceName, this::createExecutor);
+        }
+        return executor;
+    }
+
+    void shutdown(@Nonnull String datasourceName) {
+        ExecutorService executor = executors.remove(datasourceName);
+        if (executor != null) {
+            // callbacks already submitted are allowed to finish
+            executor.shutdown();
+        }
+    }
+
+    static int resolveMaximumPoolSize(@Nonnull Map<String, Object> config) {
+        Map<String, Object> pool = getConfigValue(config, "pool", Collections.<String, Object>emptyMap());
+        return Math.max(1, getConfigValueAsInt(pool, "maximumPoolSize", DEFAULT_MAXIMUM_POOL_SIZE));
+    }
+
+    @Nonnull
+    private ExecutorService createExecutor(@Nonnull String datasourceName) {
+        Map<String, Object> config = sql2oFactory.getConfigurationFor(datasourceName);
+        int size = resolveMaximumPoolSize(config);
+        String type = getConfigValueAsString(config, "executor", EXECUTOR_PLATFORM).trim().toLowerCase();
+
+        if (EXECUTOR_VIRTUAL.equals(type)) {
+            if (VirtualThreads.isAvailable()) {
+                LOG.debug("Creating virtual thread executor with {} permits for datasource '{}'", size, datasourceName);
+                return VirtualThreads.newBoundedExecutor("sql2o-" + datasourceName + "-", size);
+            }
+            LOG.warn("Virtual threads are not supported by this JVM, datasource '{}' will use platform threads", datasourceName);
+        } else if (!EXECUTOR_PLATFORM.equals(type)) {
+            throw new IllegalArgumentException("Invalid executor '" + type + "' for datasource '" + datasourceName + "'. Valid values are [platform, virtual]");
+        }
+
+        LOG.debug("Creating executor with {} threads for datasource '{}'", size, datasourceName);
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(size, size,
+            KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(),
+            new Sql2oThreadFactory(datasourceName));
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    private static final class Sql2oThreadFactory implements ThreadFactory {
+        private final String prefix;
+        private final AtomicInteger counter = new AtomicInteger();
+
+        private Sql2oThreadFactory(@Nonnull String datasourceName) {
+            this.prefix = "sql2o-" + datasourceName + "-";
+        }
+
+        @Override
+        public Thread newThread(@Nonnull Runnable runnable) {
+            Thread thread = new Thread(runnable, prefix + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
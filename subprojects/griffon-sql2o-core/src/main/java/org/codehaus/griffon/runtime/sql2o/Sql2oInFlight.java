@@ -0,0 +1,149 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.sql2o;
+
+import griffon.annotations.core.Nonnull;
+import org.sql2o.Sql2o;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Counts the callbacks, and the streams they returned, still using each {@code Sql2o} instance, so that an
+ * instance swapped out by {@code reloadSql2o} is destroyed only once the last of them is done.
+ * <p>
+ * Callers must check that the instance is still the current one after {@code enter}, and back off if it isn't:
+ * an instance is retired after being swapped out, so every caller that saw it as current has been counted by then.
+ * <p>
+ * Every callback goes through here, so counts are spread over stripes picked by thread, each on its own cache line.
+ * An entry leaves the stripe it entered, even when a stream is closed on another thread, which keeps every stripe at
+ * zero or above: a caller still inside holds its stripe above zero, and a sum of zero really means idle.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+final class Sql2oInFlight {
+    // ints per stripe, 64 bytes apart so that stripes don't share a cache line
+    private static final int PADDING = 16;
+    private static final int STRIPES = Math.min(64, Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 2 - 1) << 1);
+
+    private final ConcurrentMap<Sql2o, Counter> counters = new ConcurrentHashMap<>();
+
+    @Nonnull
+    Entry enter(@Nonnull Sql2o sql2o) {
+        Counter counter = counters.get(sql2o);
+        if (counter == null) {
+            counter = counters.computeIfAbsent(sql2o, Counter::new);
+        }
+        return counter.enter();
+    }
+
+    /**
+     * Forgets an instance that is no longer current and no caller is using. Callers that counted themselves on it
+     * in the meantime find it is not current and back off.
+     */
+    void discardIfIdle(@Nonnull Sql2o sql2o) {
+        counters.computeIfPresent(sql2o, (k, counter) -> counter.isIdle() && counter.onDrained == null ? null : counter);
+    }
+
+    /**
+     * Stops tracking an instance that was closed, callers still using it are not waited for.
+     */
+    void forget(@Nonnull Sql2o sql2o) {
+        counters.remove(sql2o);
+    }
+
+    /**
+     * Runs {@code onDrained} once no caller uses the instance anymore, right away if none does. It runs on the
+     * thread of the last caller to leave.
+     */
+    void retire(@Nonnull Sql2o sql2o, @Nonnull Runnable onDrained) {
+        Counter counter = counters.computeIfAbsent(sql2o, Counter::new);
+        counter.onDrained = onDrained;
+        counter.drainIfIdle();
+    }
+
+    private static int stripe() {
+        // thread ids are sequential, spread neighbours over different stripes
+        long id = Thread.currentThread().getId() * 0x9E3779B97F4A7C15L;
+        return (int) (id >>> 32) & (STRIPES - 1);
+    }
+
+    final class Counter {
+        private final Sql2o sql2o;
+        private final AtomicIntegerArray counts = new AtomicIntegerArray(STRIPES * PADDING);
+        private final AtomicBoolean drained = new AtomicBoolean();
+        private volatile Runnable onDrained;
+
+        private Counter(@Nonnull Sql2o sql2o) {
+            this.sql2o = sql2o;
+        }
+
+        @Nonnull
+        private Entry enter() {
+            int index = stripe() * PADDING;
+            counts.incrementAndGet(index);
+            return new Entry(this, index);
+        }
+
+        private void exit(int index) {
+            counts.decrementAndGet(index);
+            if (onDrained != null) {
+                drainIfIdle();
+            }
+        }
+
+        private boolean isIdle() {
+            for (int i = 0; i < counts.length(); i += PADDING) {
+                if (counts.get(i) != 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void drainIfIdle() {
+            Runnable task = onDrained;
+            if (task != null && isIdle() && drained.compareAndSet(false, true)) {
+                counters.remove(sql2o, this);
+                task.run();
+            }
+        }
+    }
+
+    static final class Entry {
+        private final Counter counter;
+        private final int index;
+
+        private Entry(@Nonnull Counter counter, int index) {
+            this.counter = counter;
+            this.index = index;
+        }
+
+        @Nonnull
+        Sql2o getSql2o() {
+            return counter.sql2o;
+        }
+
+        void exit() {
+            counter.exit(index);
+        }
+    }
+}
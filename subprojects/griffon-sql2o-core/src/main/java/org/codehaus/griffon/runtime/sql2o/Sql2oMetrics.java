@@ -0,0 +1,61 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.sql2o;
+
+import griffon.annotations.core.Nonnull;
+import griffon.plugins.sql2o.Sql2oFactory;
+
+import javax.inject.Inject;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import static griffon.util.ConfigUtils.getConfigValueAsLong;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Holds the {@code DatasourceMetrics} of every datasource, created on first use with the
+ * datasource's {@code slowQueryThresholdMs} setting (0, the default, disables slow query tracking).
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public class Sql2oMetrics {
+    private static final String KEY_SLOW_QUERY_THRESHOLD = "slowQueryThresholdMs";
+
+    private final Sql2oFactory sql2oFactory;
+    private final ConcurrentMap<String, DatasourceMetrics> metrics = new ConcurrentHashMap<>();
+
+    @Inject
+    public Sql2oMetrics(@Nonnull Sql2oFactory sql2oFactory) {
+        this.sql2oFactory = requireNonNull(sql2oFactory, "Argument 'sql2oFactory' must not be null");
+    }
+
+    @Nonnull
+    DatasourceMetrics metricsFor(@Nonnull String datasourceName) {
+        DatasourceMetrics datasourceMetrics = metrics.get(datasourceName);
+        if (datasourceMetrics == null) {
+            datasourceMetrics = metrics.computeIfAbsent(datasourceName, this::createMetrics);
+        }
+        return datasourceMetrics;
+    }
+
+    @Nonnull
+    private DatasourceMetrics createMetrics(@Nonnull String datasourceName) {
+        return new DatasourceMetrics(getConfigValueAsLong(sql2oFactory.getConfigurationFor(datasourceName), KEY_SLOW_QUERY_THRESHOLD, 0L));
+    }
+}
@@ -22,6 +22,7 @@ import griffon.core.addon.GriffonAddon;
 import griffon.core.injection.Module;
 import griffon.plugins.sql2o.Sql2oFactory;
 import griffon.plugins.sql2o.Sql2oHandler;
+import griffon.plugins.sql2o.Sql2oRowMappers;
 import griffon.plugins.sql2o.Sql2oStorage;
 import org.codehaus.griffon.runtime.core.injection.AbstractModule;
 import org.kordamp.jipsy.annotations.ServiceProviderFor;
@@ -46,6 +47,18 @@ public class Sql2oModule extends AbstractModule {
             .to(DefaultSql2oFactory.class)
             .asSingleton();
 
+        bind(Sql2oMetrics.class)
+            .asSingleton();
+
+        bind(Sql2oCircuitBreakers.class)
+            .asSingleton();
+
+        bind(Sql2oPools.class)
+            .asSingleton();
+
+        bind(Sql2oRowMappers.class)
+            .asSingleton();
+
         bind(Sql2oHandler.class)
             .to(DefaultSql2oHandler.class)
             .asSingleton();
@@ -0,0 +1,169 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.sql2o;
+
+import griffon.annotations.core.Nonnull;
+import griffon.annotations.core.Nullable;
+import griffon.plugins.sql2o.Sql2oFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.sql.DataSource;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static griffon.util.ConfigUtils.getConfigValue;
+import static griffon.util.ConfigUtils.getConfigValueAsInt;
+import static griffon.util.ConfigUtils.getConfigValueAsLong;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Holds the {@code DatasourcePool} of every datasource, created on first use from its {@code adaptivePool} block.
+ * Adaptive sizing is off unless the block sets a {@code maximumPoolSize}; when on, every pool is adjusted each
+ * {@code intervalMs} by a single shared daemon thread for as long as its datasource stays connected. The block is
+ * read again every time a datasource connects, so reloading a datasource picks up changed settings.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public class Sql2oPools {
+    private static final Logger LOG = LoggerFactory.getLogger(Sql2oPools.class);
+    private static final String KEY_ADAPTIVE_POOL = "adaptivePool";
+
+    private final Sql2oFactory sql2oFactory;
+    private final ConcurrentMap<String, DatasourcePool> pools = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, ScheduledFuture<?>> controllers = new ConcurrentHashMap<>();
+    private ScheduledExecutorService scheduler;
+
+    @Inject
+    public Sql2oPools(@Nonnull Sql2oFactory sql2oFactory) {
+        this.sql2oFactory = requireNonNull(sql2oFactory, "Argument 'sql2oFactory' must not be null");
+    }
+
+    @Nonnull
+    DatasourcePool poolFor(@Nonnull String datasourceName) {
+        DatasourcePool pool = pools.get(datasourceName);
+        if (pool == null) {
+            pool = pools.computeIfAbsent(datasourceName, this::createPool);
+        }
+        return pool;
+    }
+
+    /**
+     * Starts inspecting the pool of a freshly created datasource, and resizing it if configured to.
+     */
+    @Nonnull
+    DatasourcePool attach(@Nonnull String datasourceName, @Nonnull DataSource dataSource) {
+        DatasourcePool pool = poolFor(datasourceName);
+        pool.attach(dataSource, getSizing(datasourceName));
+        ScheduledFuture<?> controller = null;
+        if (pool.isAttached() && pool.isAdaptiveSizing()) {
+            long interval = pool.getSizing().getIntervalMillis();
+            controller = scheduler().scheduleWithFixedDelay(() -> adjust(datasourceName, pool), interval, interval, TimeUnit.MILLISECONDS);
+        }
+        ScheduledFuture<?> previous = controller != null ? controllers.put(datasourceName, controller) : controllers.remove(datasourceName);
+        if (previous != null) {
+            previous.cancel(false);
+        }
+        return pool;
+    }
+
+    void detach(@Nonnull String datasourceName) {
+        ScheduledFuture<?> controller = controllers.remove(datasourceName);
+        if (controller != null) {
+            controller.cancel(false);
+        }
+        DatasourcePool pool = pools.get(datasourceName);
+        if (pool != null) {
+            pool.detach();
+        }
+    }
+
+    /**
+     * Stops resizing every pool and lets the shared sizing thread go. A datasource connecting afterwards starts a new one.
+     */
+    void shutdown() {
+        for (String datasourceName : controllers.keySet()) {
+            ScheduledFuture<?> controller = controllers.remove(datasourceName);
+            if (controller != null) {
+                controller.cancel(false);
+            }
+        }
+        ScheduledExecutorService executor;
+        synchronized (this) {
+            executor = scheduler;
+            scheduler = null;
+        }
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    private void adjust(@Nonnull String datasourceName, @Nonnull DatasourcePool pool) {
+        try {
+            pool.adjust();
+        } catch (RuntimeException e) {
+            // a failed run must not cancel the periodic task
+            LOG.warn("Could not resize pool of datasource '{}'", datasourceName, e);
+        }
+    }
+
+    @Nonnull
+    private synchronized ScheduledExecutorService scheduler() {
+        if (scheduler == null) {
+            ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, runnable -> {
+                Thread thread = new Thread(runnable, "sql2o-pool-sizing");
+                thread.setDaemon(true);
+                return thread;
+            });
+            executor.setRemoveOnCancelPolicy(true);
+            scheduler = executor;
+        }
+        return scheduler;
+    }
+
+    @Nonnull
+    private DatasourcePool createPool(@Nonnull String datasourceName) {
+        return new DatasourcePool(datasourceName, getSizing(datasourceName));
+    }
+
+    @Nullable
+    private DatasourcePool.Sizing getSizing(@Nonnull String datasourceName) {
+        Map<String, Object> config = sql2oFactory.getConfigurationFor(datasourceName);
+        Map<String, Object> adaptivePool = getConfigValue(config, KEY_ADAPTIVE_POOL, Collections.<String, Object>emptyMap());
+
+        int maximumPoolSize = getConfigValueAsInt(adaptivePool, "maximumPoolSize", 0);
+        if (maximumPoolSize == 0) {
+            return null;
+        }
+        int minimumPoolSize = getConfigValueAsInt(adaptivePool, "minimumPoolSize", 1);
+        long targetWaitMillis = getConfigValueAsLong(adaptivePool, "targetWaitMs", 5L);
+        long intervalMillis = getConfigValueAsLong(adaptivePool, "intervalMs", 10000L);
+        if (minimumPoolSize < 1 || maximumPoolSize < minimumPoolSize || targetWaitMillis < 0L || intervalMillis < 1L) {
+            throw new IllegalArgumentException("Invalid adaptivePool settings for datasource '" + datasourceName + "'");
+        }
+        return new DatasourcePool.Sizing(minimumPoolSize, maximumPoolSize, targetWaitMillis, intervalMillis);
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.sql2o;
+
+import griffon.annotations.core.Nonnull;
+import griffon.plugins.sql2o.Sql2oFactory;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import static griffon.util.ConfigUtils.getConfigValue;
+import static griffon.util.ConfigUtils.getConfigValueAsInt;
+import static griffon.util.ConfigUtils.getConfigValueAsLong;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Keeps one query result cache per datasource, sized from the datasource's {@code queryCache} block.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+class Sql2oQueryCaches {
+    private static final String KEY_QUERY_CACHE = "queryCache";
+    private static final int DEFAULT_MAX_ENTRIES = 1000;
+    private static final long DEFAULT_MAX_BYTES = 16L * 1024L * 1024L;
+
+    private final Sql2oFactory sql2oFactory;
+    private final ConcurrentMap<String, QueryResultCache> caches = new ConcurrentHashMap<>();
+
+    Sql2oQueryCaches(@Nonnull Sql2oFactory sql2oFactory) {
+        this.sql2oFactory = requireNonNull(sql2oFactory, "Argument 'sql2oFactory' must not be null");
+    }
+
+    @Nonnull
+    QueryResultCache cacheFor(@Nonnull String datasourceName) {
+        QueryResultCache cache = caches.get(datasourceName);
+        if (cache == null) {
+            cache = caches.computeIfAbsent(datasourceName, this::createCache);
+        }
+        return cache;
+    }
+
+    void invalidate(@Nonnull String datasourceName, @Nonnull String table) {
+        QueryResultCache cache = caches.get(datasourceName);
+        if (cache != null) {
+            cache.invalidate(table);
+        }
+    }
+
+    void clear(@Nonnull String datasourceName) {
+        QueryResultCache cache = caches.remove(datasourceName);
+        if (cache != null) {
+            cache.clear();
+        }
+    }
+
+    @Nonnull
+    private QueryResultCache createCache(@Nonnull String datasourceName) {
+        Map<String, Object> config = getConfigValue(sql2oFactory.getConfigurationFor(datasourceName), KEY_QUERY_CACHE, Collections.<String, Object>emptyMap());
+        return new QueryResultCache(
+            getConfigValueAsInt(config, "maxEntries", DEFAULT_MAX_ENTRIES),
+            getConfigValueAsLong(config, "maxBytes", DEFAULT_MAX_BYTES));
+    }
+}
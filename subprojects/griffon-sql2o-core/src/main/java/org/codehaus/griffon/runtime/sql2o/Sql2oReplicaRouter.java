@@ -0,0 +1,165 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.sql2o;
+
+import griffon.annotations.core.Nonnull;
+import griffon.plugins.sql2o.Sql2oFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static griffon.util.ConfigUtils.getConfigValue;
+import static griffon.util.ConfigUtils.getConfigValueAsLong;
+import static griffon.util.ConfigUtils.getConfigValueAsString;
+import static griffon.util.GriffonNameUtils.isBlank;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Picks the datasource that serves a read-only callback. A datasource becomes the primary of a group by listing
+ * other datasources in its {@code replicas} setting; reads are spread across them by round robin (the default)
+ * or by least in-flight callbacks when {@code replicaSelection = 'least_in_flight'}. With {@code readYourWritesMs}
+ * set, a thread that just used the primary keeps reading from it for that long.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+class Sql2oReplicaRouter {
+    private static final String SELECTION_ROUND_ROBIN = "round_robin";
+    private static final String SELECTION_LEAST_IN_FLIGHT = "least_in_flight";
+
+    private final Sql2oFactory sql2oFactory;
+    private final Sql2oMetrics sql2oMetrics;
+    private final ConcurrentMap<String, ReplicaGroup> groups = new ConcurrentHashMap<>();
+    private final ThreadLocal<Map<String, Long>> lastPrimaryUse = ThreadLocal.withInitial(HashMap::new);
+
+    Sql2oReplicaRouter(@Nonnull Sql2oFactory sql2oFactory, @Nonnull Sql2oMetrics sql2oMetrics) {
+        this.sql2oFactory = requireNonNull(sql2oFactory, "Argument 'sql2oFactory' must not be null");
+        this.sql2oMetrics = requireNonNull(sql2oMetrics, "Argument 'sql2oMetrics' must not be null");
+    }
+
+    @Nonnull
+    String route(@Nonnull String group) {
+        ReplicaGroup replicaGroup = groupFor(group);
+        if (replicaGroup.replicas.length == 0) {
+            return group;
+        }
+
+        if (replicaGroup.stickinessNanos > 0) {
+            Long usedAt = lastPrimaryUse.get().get(group);
+            if (usedAt != null) {
+                if (System.nanoTime() - usedAt < replicaGroup.stickinessNanos) {
+                    return group;
+                }
+                lastPrimaryUse.get().remove(group);
+            }
+        }
+
+        return replicaGroup.leastInFlight ? leastInFlight(replicaGroup.replicas) : roundRobin(replicaGroup);
+    }
+
+    void primaryUsed(@Nonnull String datasourceName) {
+        ReplicaGroup replicaGroup = groupFor(datasourceName);
+        if (replicaGroup.stickinessNanos > 0) {
+            lastPrimaryUse.get().put(datasourceName, System.nanoTime());
+        }
+    }
+
+    @Nonnull
+    private String roundRobin(@Nonnull ReplicaGroup replicaGroup) {
+        int next = replicaGroup.counter.getAndIncrement() & Integer.MAX_VALUE;
+        return replicaGroup.replicas[next % replicaGroup.replicas.length];
+    }
+
+    @Nonnull
+    private String leastInFlight(@Nonnull String[] replicas) {
+        String selected = replicas[0];
+        long lowest = Long.MAX_VALUE;
+        for (String replica : replicas) {
+            long inFlight = sql2oMetrics.metricsFor(replica).getInFlightCount();
+            if (inFlight < lowest) {
+                lowest = inFlight;
+                selected = replica;
+            }
+        }
+        return selected;
+    }
+
+    @Nonnull
+    private ReplicaGroup groupFor(@Nonnull String group) {
+        ReplicaGroup replicaGroup = groups.get(group);
+        if (replicaGroup == null) {
+            replicaGroup = groups.computeIfAbsent(group, this::createGroup);
+        }
+        return replicaGroup;
+    }
+
+    @Nonnull
+    private ReplicaGroup createGroup(@Nonnull String group) {
+        Map<String, Object> config = sql2oFactory.getConfigurationFor(group);
+        List<String> replicas = replicaNames(getConfigValue(config, "replicas", Collections.emptyList()));
+        for (String replica : replicas) {
+            if (!sql2oFactory.getDatasourceNames().contains(replica)) {
+                throw new IllegalArgumentException("Invalid replica '" + replica + "' for datasource '" + group + "'");
+            }
+        }
+
+        String selection = getConfigValueAsString(config, "replicaSelection", SELECTION_ROUND_ROBIN).trim().toLowerCase();
+        if (!SELECTION_ROUND_ROBIN.equals(selection) && !SELECTION_LEAST_IN_FLIGHT.equals(selection)) {
+            throw new IllegalArgumentException("Invalid replicaSelection '" + selection + "' for datasource '" + group + "'. Valid values are [round_robin, least_in_flight]");
+        }
+
+        long stickinessMillis = getConfigValueAsLong(config, "readYourWritesMs", 0L);
+        return new ReplicaGroup(replicas.toArray(new String[0]), SELECTION_LEAST_IN_FLIGHT.equals(selection), TimeUnit.MILLISECONDS.toNanos(Math.max(0L, stickinessMillis)));
+    }
+
+    @Nonnull
+    private static List<String> replicaNames(Object value) {
+        List<String> names = new ArrayList<>();
+        Collection<?> values = value instanceof Collection ? (Collection<?>) value : Collections.singletonList(value);
+        for (Object v : values) {
+            // also accept a comma separated string
+            for (String name : String.valueOf(v).split(",")) {
+                if (v != null && !isBlank(name)) {
+                    names.add(name.trim());
+                }
+            }
+        }
+        return names;
+    }
+
+    private static final class ReplicaGroup {
+        private final String[] replicas;
+        private final boolean leastInFlight;
+        private final long stickinessNanos;
+        private final AtomicInteger counter = new AtomicInteger();
+
+        private ReplicaGroup(@Nonnull String[] replicas, boolean leastInFlight, long stickinessNanos) {
+            this.replicas = replicas;
+            this.leastInFlight = leastInFlight;
+            this.stickinessNanos = stickinessNanos;
+        }
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.sql2o;
+
+import griffon.annotations.core.Nonnull;
+import griffon.plugins.sql2o.Sql2oFactory;
+import griffon.plugins.sql2o.Sql2oRetryClassifier;
+
+import java.sql.SQLException;
+import java.sql.SQLTransactionRollbackException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static griffon.util.ConfigUtils.getConfigValue;
+import static griffon.util.ConfigUtils.getConfigValueAsDouble;
+import static griffon.util.ConfigUtils.getConfigValueAsInt;
+import static griffon.util.ConfigUtils.getConfigValueAsLong;
+import static griffon.util.ConfigUtils.getConfigValueAsString;
+import static griffon.util.GriffonNameUtils.isBlank;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Holds the retry policy of every datasource, read from its {@code retry} block on first use. Transactions,
+ * {@code Iterable} batches and {@code Sql2oIdempotentCallback}s are attempted {@code maxAttempts} times at most
+ * (1, the default, disables retries), waiting an exponentially
+ * growing, jittered delay between attempts. Which failures are retried is decided by a {@code Sql2oRetryClassifier},
+ * by default one that knows the deadlock and serialization failure codes of the configured {@code quirks}.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+class Sql2oRetries {
+    private static final String KEY_RETRY = "retry";
+
+    private final Sql2oFactory sql2oFactory;
+    private final ConcurrentMap<String, RetryPolicy> policies = new ConcurrentHashMap<>();
+
+    Sql2oRetries(@Nonnull Sql2oFactory sql2oFactory) {
+        this.sql2oFactory = requireNonNull(sql2oFactory, "Argument 'sql2oFactory' must not be null");
+    }
+
+    @Nonnull
+    RetryPolicy policyFor(@Nonnull String datasourceName) {
+        RetryPolicy policy = policies.get(datasourceName);
+        if (policy == null) {
+            policy = policies.computeIfAbsent(datasourceName, this::createPolicy);
+        }
+        return policy;
+    }
+
+    @Nonnull
+    private RetryPolicy createPolicy(@Nonnull String datasourceName) {
+        Map<String, Object> config = sql2oFactory.getConfigurationFor(datasourceName);
+        Map<String, Object> retry = getConfigValue(config, KEY_RETRY, Collections.<String, Object>emptyMap());
+
+        int maxAttempts = getConfigValueAsInt(retry, "maxAttempts", 1);
+        long initialBackoffMillis = getConfigValueAsLong(retry, "initialBackoffMs", 50L);
+        long maxBackoffMillis = getConfigValueAsLong(retry, "maxBackoffMs", 1000L);
+        double multiplier = getConfigValueAsDouble(retry, "multiplier", 2d);
+        double jitter = getConfigValueAsDouble(retry, "jitter", 0.5d);
+        if (maxAttempts < 1 || initialBackoffMillis < 0L || maxBackoffMillis < initialBackoffMillis || multiplier < 1d || jitter < 0d || jitter > 1d) {
+            throw new IllegalArgumentException("Invalid retry settings for datasource '" + datasourceName + "': " + retry);
+        }
+
+        return new RetryPolicy(maxAttempts,
+            TimeUnit.MILLISECONDS.toNanos(initialBackoffMillis),
+            TimeUnit.MILLISECONDS.toNanos(maxBackoffMillis),
+            multiplier,
+            jitter,
+            resolveClassifier(getConfigValueAsString(retry, "classifier", null), getConfigValueAsString(config, "quirks", null)));
+    }
+
+    @Nonnull
+    private static Sql2oRetryClassifier resolveClassifier(String classifier, String quirks) {
+        if (!isBlank(classifier)) {
+            try {
+                return (Sql2oRetryClassifier) Sql2oFactory.class.getClassLoader().loadClass(classifier).newInstance();
+            } catch (Exception e) {
+                throw new IllegalArgumentException("Invalid Sql2oRetryClassifier class: " + classifier);
+            }
+        }
+
+        switch (isBlank(quirks) ? "none" : quirks.toLowerCase()) {
+            case "postgres":
+                // lock_not_available, raised by NOWAIT and lock_timeout
+                return new DialectRetryClassifier(states("55P03"), codes());
+            case "oracle":
+                // ORA-00060 deadlock detected, ORA-08177 can't serialize access; both report SQLState 61000/72000
+                return new DialectRetryClassifier(states(), codes(60, 8177));
+            case "db2":
+                // SQL0913N deadlock or timeout without rollback (SQL0911N already reports SQLState 40001)
+                return new DialectRetryClassifier(states("57033"), codes(-913));
+            default:
+                return new DialectRetryClassifier(states(), codes());
+        }
+    }
+
+    @Nonnull
+    private static Set<String> states(String... states) {
+        return new HashSet<>(Arrays.asList(states));
+    }
+
+    @Nonnull
+    private static Set<Integer> codes(Integer... codes) {
+        return new HashSet<>(Arrays.asList(codes));
+    }
+
+    static final class RetryPolicy {
+        private final int maxAttempts;
+        private final long initialBackoffNanos;
+        private final long maxBackoffNanos;
+        private final double multiplier;
+        private final double jitter;
+        private final Sql2oRetryClassifier classifier;
+
+        private RetryPolicy(int maxAttempts, long initialBackoffNanos, long maxBackoffNanos, double multiplier, double jitter, @Nonnull Sql2oRetryClassifier classifier) {
+            this.maxAttempts = maxAttempts;
+            this.initialBackoffNanos = initialBackoffNanos;
+            this.maxBackoffNanos = maxBackoffNanos;
+            this.multiplier = multiplier;
+            this.jitter = jitter;
+            this.classifier = classifier;
+        }
+
+        int getMaxAttempts() {
+            return maxAttempts;
+        }
+
+        /**
+         * @return {@code true} if the failure of the given attempt (starting at 1) is transient and attempts remain
+         */
+        boolean shouldRetry(@Nonnull String datasourceName, int attempt, @Nonnull Throwable failure) {
+            if (attempt >= maxAttempts) {
+                return false;
+            }
+            for (Throwable t = failure; t != null; t = t.getCause() == t ? null : t.getCause()) {
+                if (t instanceof SQLException && classifier.isRetryable(datasourceName, (SQLException) t)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Waits before the attempt that follows the given one. The upper {@code jitter} fraction of the delay is
+         * randomized so that callers that failed together don't retry in lockstep.
+         */
+        void backoff(int attempt) throws InterruptedException {
+            double delay = Math.min(maxBackoffNanos, initialBackoffNanos * Math.pow(multiplier, attempt - 1));
+            long nanos = (long) (delay * (1d - jitter) + delay * jitter * ThreadLocalRandom.current().nextDouble());
+            if (nanos > 0L) {
+                TimeUnit.NANOSECONDS.sleep(nanos);
+            }
+        }
+    }
+
+    /**
+     * Retries any SQLState of class 40 (transaction rollback: serialization failures and deadlocks, as reported
+     * by most drivers) plus the given vendor states and error codes.
+     */
+    private static final class DialectRetryClassifier implements Sql2oRetryClassifier {
+        private final Set<String> sqlStates;
+        private final Set<Integer> errorCodes;
+
+        private DialectRetryClassifier(@Nonnull Set<String> sqlStates, @Nonnull Set<Integer> errorCodes) {
+            this.sqlStates = sqlStates;
+            this.errorCodes = errorCodes;
+        }
+
+        @Override
+        public boolean isRetryable(@Nonnull String datasourceName, @Nonnull SQLException exception) {
+            String sqlState = exception.getSQLState();
+            return exception instanceof SQLTransactionRollbackException ||
+                (sqlState != null && (sqlState.startsWith("40") || sqlStates.contains(sqlState))) ||
+                errorCodes.contains(exception.getErrorCode());
+        }
+    }
+}
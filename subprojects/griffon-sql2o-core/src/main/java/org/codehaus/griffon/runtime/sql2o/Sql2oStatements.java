@@ -0,0 +1,218 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.sql2o;
+
+import griffon.annotations.core.Nonnull;
+import griffon.plugins.sql2o.Sql2oColumns;
+import griffon.plugins.sql2o.Sql2oRowMappers;
+import griffon.plugins.sql2o.exceptions.RuntimeSql2oException;
+import org.sql2o.Connection;
+import org.sql2o.Query;
+import org.sql2o.ResultSetIterable;
+import org.sql2o.Sql2o;
+
+import java.sql.Statement;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Statement recipes shared by the {@code Sql2oHandler} convenience methods.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+final class Sql2oStatements {
+    private Sql2oStatements() {
+        // prevent instantiation
+    }
+
+    /**
+     * Adds every item to a batch, executing it each time {@code batchSize} rows have been added.
+     * All chunks run inside a single transaction that is committed once the last one succeeds.
+     *
+     * @return the sum of update counts, where {@code Statement.SUCCESS_NO_INFO} counts as one row
+     */
+    static <T> long executeBatch(@Nonnull Sql2o sql2o, @Nonnull String sql, @Nonnull Iterator<T> items, int batchSize) {
+        try (Connection connection = sql2o.beginTransaction();
+             Query query = connection.createQuery(sql)) {
+            long total = 0;
+            int pending = 0;
+            while (items.hasNext()) {
+                bind(query, items.next());
+                query.addToBatch();
+                if (++pending == batchSize) {
+                    total += flush(query);
+                    pending = 0;
+                }
+            }
+            if (pending > 0) {
+                total += flush(query);
+            }
+            connection.commit();
+            return total;
+        }
+    }
+
+    /**
+     * Executes a query whose rows are mapped lazily as the returned stream is consumed. The connection
+     * is held in a read-only transaction (some drivers, e.g. PostgreSQL, only honor the fetch size when
+     * auto-commit is off) and released once the stream is exhausted, fails or gets closed, at which point
+     * {@code onClose} runs.
+     */
+    @Nonnull
+    static <T> Stream<T> stream(@Nonnull String datasourceName, @Nonnull Sql2o sql2o, @Nonnull String sql, @Nonnull Map<String, ?> params, @Nonnull Class<T> type, int fetchSize, @Nonnull Runnable onClose) {
+        Connection connection = sql2o.beginTransaction(StatementCustomizingConnectionSource.withFetchSize(sql2o.getConnectionSource(), fetchSize));
+        try {
+            Query query = Sql2oRowMappers.apply(connection.createQuery(sql));
+            bind(query, params);
+            ResultSetIterable<T> rows = query.executeAndFetchLazy(type);
+            LazyIterator<T> iterator = new LazyIterator<>(datasourceName, rows, connection, onClose);
+            return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(iterator::close);
+        } catch (RuntimeException e) {
+            connection.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Executes a query and maps every row eagerly, releasing the connection before returning.
+     */
+    @Nonnull
+    static <T> List<T> fetch(@Nonnull Sql2o sql2o, @Nonnull String sql, @Nonnull Map<String, ?> params, @Nonnull Class<T> type) {
+        try (Connection connection = sql2o.open();
+             Query query = Sql2oRowMappers.apply(connection.createQuery(sql))) {
+            bind(query, params);
+            return query.executeAndFetch(type);
+        }
+    }
+
+    /**
+     * Executes a query and reads every row into primitive columns. Like {@code stream}, it runs in a read-only
+     * transaction so that drivers honor the fetch size instead of buffering the whole result first.
+     */
+    @Nonnull
+    static Sql2oColumns fetchColumns(@Nonnull Sql2o sql2o, @Nonnull String sql, @Nonnull Map<String, ?> params, int fetchSize) {
+        // nothing is written, closing the connection rolls back the transaction
+        try (Connection connection = sql2o.beginTransaction(StatementCustomizingConnectionSource.withFetchSize(sql2o.getConnectionSource(), fetchSize));
+             Query query = connection.createQuery(sql)) {
+            bind(query, params);
+            return Sql2oColumns.fetch(query);
+        }
+    }
+
+    /**
+     * Binds a {@code Map}'s entries by key, or a POJO's properties by name.
+     * Keys that do not match a parameter in the statement are ignored.
+     */
+    static void bind(@Nonnull Query query, @Nonnull Object item) {
+        if (item instanceof Map) {
+            Map<String, List<Integer>> parameters = query.getParamNameToIdxMap();
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) item).entrySet()) {
+                String name = String.valueOf(entry.getKey());
+                if (parameters.containsKey(name)) {
+                    query.addParameter(name, entry.getValue());
+                }
+            }
+        } else {
+            query.bind(item);
+        }
+    }
+
+    private static final class LazyIterator<T> implements Iterator<T> {
+        private final String datasourceName;
+        private final ResultSetIterable<T> rows;
+        private final Iterator<T> delegate;
+        private final Connection connection;
+        private final Runnable onClose;
+        private boolean closed;
+
+        private LazyIterator(@Nonnull String datasourceName, @Nonnull ResultSetIterable<T> rows, @Nonnull Connection connection, @Nonnull Runnable onClose) {
+            this.datasourceName = datasourceName;
+            this.rows = rows;
+            this.delegate = rows.iterator();
+            this.connection = connection;
+            this.onClose = onClose;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (closed) {
+                return false;
+            }
+            try {
+                if (delegate.hasNext()) {
+                    return true;
+                }
+            } catch (RuntimeException e) {
+                close();
+                throw new RuntimeSql2oException(datasourceName, e);
+            }
+            close();
+            return false;
+        }
+
+        @Override
+        public T next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            try {
+                return delegate.next();
+            } catch (RuntimeException e) {
+                close();
+                throw new RuntimeSql2oException(datasourceName, e);
+            }
+        }
+
+        private void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                rows.close();
+            } finally {
+                try {
+                    // nothing was written, closing rolls back the read-only transaction
+                    connection.close();
+                } finally {
+                    onClose.run();
+                }
+            }
+        }
+    }
+
+    private static long flush(@Nonnull Query query) {
+        long total = 0;
+        for (int count : query.executeBatch().getBatchResult()) {
+            if (count > 0) {
+                total += count;
+            } else if (count == Statement.SUCCESS_NO_INFO) {
+                total++;
+            }
+        }
+        return total;
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.sql2o;
+
+import griffon.annotations.core.Nonnull;
+import griffon.annotations.core.Nullable;
+import org.sql2o.Connection;
+import org.sql2o.Sql2o;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Keeps track of the transactions opened by {@code withSql2oTransaction} on the current thread, one per datasource.
+ * While a transaction is bound, callbacks on the same datasource get a {@code Sql2o} whose connections all share the
+ * transaction's JDBC connection. Closing, committing or switching auto-commit on those connections does nothing; the
+ * outermost {@code withSql2oTransaction} decides. A rollback marks the transaction as rollback-only.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+class Sql2oTransactions {
+    private final ThreadLocal<Map<String, BoundTransaction>> transactions = ThreadLocal.withInitial(HashMap::new);
+
+    @Nullable
+    BoundTransaction current(@Nonnull String datasourceName) {
+        return transactions.get().get(datasourceName);
+    }
+
+    @Nonnull
+    BoundTransaction bind(@Nonnull String datasourceName, @Nonnull Sql2o sql2o, @Nonnull Connection connection, int isolationLevel) {
+        BoundTransaction transaction = new BoundTransaction(sql2o, connection, isolationLevel);
+        transactions.get().put(datasourceName, transaction);
+        return transaction;
+    }
+
+    void unbind(@Nonnull String datasourceName) {
+        Map<String, BoundTransaction> bound = transactions.get();
+        bound.remove(datasourceName);
+        if (bound.isEmpty()) {
+            transactions.remove();
+        }
+    }
+
+    static final class BoundTransaction {
+        private final Connection connection;
+        private final int isolationLevel;
+        private final Sql2o sql2o;
+        private volatile boolean rollbackOnly;
+
+        private BoundTransaction(@Nonnull Sql2o sql2o, @Nonnull Connection connection, int isolationLevel) {
+            this.connection = requireNonNull(connection, "Argument 'connection' must not be null");
+            this.isolationLevel = isolationLevel;
+            this.sql2o = participating(requireNonNull(sql2o, "Argument 'sql2o' must not be null"));
+        }
+
+        @Nonnull
+        Connection getConnection() {
+            return connection;
+        }
+
+        int getIsolationLevel() {
+            return isolationLevel;
+        }
+
+        /**
+         * @return a {@code Sql2o} whose connections take part in this transaction
+         */
+        @Nonnull
+        Sql2o getSql2o() {
+            return sql2o;
+        }
+
+        boolean isRollbackOnly() {
+            return rollbackOnly;
+        }
+
+        void setRollbackOnly() {
+            rollbackOnly = true;
+        }
+
+        @Nonnull
+        private Sql2o participating(@Nonnull Sql2o source) {
+            java.sql.Connection jdbcConnection = connection.getJdbcConnection();
+            java.sql.Connection participant = (java.sql.Connection) Proxy.newProxyInstance(java.sql.Connection.class.getClassLoader(), new Class<?>[]{java.sql.Connection.class}, (proxy, method, args) -> {
+                switch (method.getName()) {
+                    case "close":
+                    case "commit":
+                    case "setAutoCommit":
+                    case "setTransactionIsolation":
+                        return null;
+                    case "rollback":
+                        // rolling back to a savepoint is fine, a full rollback is up to the outermost scope
+                        if (args == null || args.length == 0) {
+                            setRollbackOnly();
+                            return null;
+                        }
+                        break;
+                    case "getAutoCommit":
+                        // keeps Sql2o from rolling back when one of these connections gets closed
+                        return true;
+                    default:
+                        break;
+                }
+                try {
+                    return method.invoke(jdbcConnection, args);
+                } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                }
+            });
+
+            Sql2o view = new Sql2o((DataSource) null, source.getQuirks());
+            view.setConnectionSource(() -> participant);
+            view.setDefaultColumnMappings(source.getDefaultColumnMappings());
+            view.setDefaultCaseSensitive(source.isDefaultCaseSensitive());
+            return view;
+        }
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.sql2o;
+
+import griffon.annotations.core.Nonnull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sql2o.Connection;
+import org.sql2o.Sql2o;
+import org.sql2o.Sql2oException;
+import org.sql2o.data.LazyTable;
+import org.sql2o.data.Row;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import static griffon.util.ConfigUtils.getConfigValue;
+import static griffon.util.ConfigUtils.getConfigValueAsInt;
+import static griffon.util.ConfigUtils.getConfigValueAsLong;
+
+/**
+ * Prepares a freshly connected datasource before the application uses it: opens {@code pool.minimumIdle}
+ * connections at once so the pool is filled, parses the {@code warmup.statements} so they land in the statement
+ * cache and prepares them on each of those connections so they land in the driver's statement cache too, then
+ * runs the {@code warmup.queries}.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+final class Sql2oWarmup {
+    private static final Logger LOG = LoggerFactory.getLogger(Sql2oWarmup.class);
+    private static final String KEY_WARMUP = "warmup";
+    private static final long DEFAULT_TIMEOUT_MILLIS = 30000L;
+
+    private Sql2oWarmup() {
+        // prevent instantiation
+    }
+
+    /**
+     * @return how long startup waits for the datasource to be warmed up, from its {@code warmup.timeoutMs} setting
+     */
+    static long timeoutMillis(@Nonnull String datasourceName, @Nonnull Map<String, Object> config) {
+        Map<String, Object> warmup = getConfigValue(config, KEY_WARMUP, Collections.<String, Object>emptyMap());
+        long timeoutMillis = getConfigValueAsLong(warmup, "timeoutMs", DEFAULT_TIMEOUT_MILLIS);
+        if (timeoutMillis < 1L) {
+            throw new IllegalArgumentException("Invalid warmup.timeoutMs " + timeoutMillis + " for datasource '" + datasourceName + "'. It must be greater than zero");
+        }
+        return timeoutMillis;
+    }
+
+    static void warmUp(@Nonnull String datasourceName, @Nonnull Sql2o sql2o, @Nonnull Map<String, Object> config) {
+        long startedAt = System.nanoTime();
+        Map<String, Object> pool = getConfigValue(config, "pool", Collections.<String, Object>emptyMap());
+        Map<String, Object> warmup = getConfigValue(config, KEY_WARMUP, Collections.<String, Object>emptyMap());
+
+        fillPool(datasourceName, sql2o, getConfigValueAsInt(pool, "minimumIdle", 0), asList(warmup.get("statements")));
+
+        for (String sql : asList(warmup.get("queries"))) {
+            try (Connection connection = sql2o.open();
+                 LazyTable table = connection.createQuery(sql).executeAndFetchTableLazy()) {
+                // read every row without keeping them, the point is to warm up caches on both ends
+                long count = 0;
+                for (Iterator<Row> it = table.rows().iterator(); it.hasNext(); it.next()) {
+                    count++;
+                }
+                LOG.debug("Warm-up query on datasource '{}' read {} rows: {}", datasourceName, count, sql);
+            }
+        }
+
+        LOG.debug("Warmed up datasource '{}' in {} ms", datasourceName, (System.nanoTime() - startedAt) / 1_000_000L);
+    }
+
+    private static void fillPool(@Nonnull String datasourceName, @Nonnull Sql2o sql2o, int minimumIdle, @Nonnull List<String> statements) {
+        List<String> parsed = new ArrayList<>(statements.size());
+        for (String sql : statements) {
+            parsed.add(sql2o.getQuirks().getSqlParameterParsingStrategy().parseSql(sql, new HashMap<>()));
+        }
+
+        // connections must be held together, otherwise the pool hands out the same one over and over
+        int size = parsed.isEmpty() ? minimumIdle : Math.max(1, minimumIdle);
+        List<Connection> connections = new ArrayList<>(size);
+        try {
+            for (int i = 0; i < size; i++) {
+                Connection connection = sql2o.open();
+                connections.add(connection);
+                for (String sql : parsed) {
+                    PreparedStatement statement = connection.getJdbcConnection().prepareStatement(sql);
+                    statement.close();
+                    LOG.trace("Prepared warm-up statement on datasource '{}': {}", datasourceName, sql);
+                }
+            }
+        } catch (SQLException e) {
+            throw new Sql2oException("Error while preparing warm-up statements on datasource '" + datasourceName + "'", e);
+        } finally {
+            for (Connection connection : connections) {
+                connection.close();
+            }
+        }
+    }
+
+    @Nonnull
+    private static List<String> asList(Object value) {
+        if (value == null) {
+            return Collections.emptyList();
+        }
+        List<String> list = new ArrayList<>();
+        for (Object item : value instanceof Collection ? (Collection<?>) value : Collections.singletonList(value)) {
+            list.add(String.valueOf(item));
+        }
+        return list;
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.sql2o;
+
+import griffon.annotations.core.Nonnull;
+import oracle.jdbc.OracleConnection;
+import org.sql2o.connectionsources.ConnectionSource;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Turns on the driver's own prepared statement cache for connections that do not cache by default.
+ * Only the Oracle driver needs to be told; PostgreSQL and H2 already keep prepared statements per connection.
+ * Pooled connections are configured once, the setting sticks to the physical connection.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+class StatementCachingConnectionSource implements ConnectionSource {
+    private final ConnectionSource delegate;
+    private final int cacheSize;
+
+    StatementCachingConnectionSource(@Nonnull ConnectionSource delegate, int cacheSize) {
+        this.delegate = requireNonNull(delegate, "Argument 'delegate' must not be null");
+        this.cacheSize = cacheSize;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        Connection connection = delegate.getConnection();
+        if (connection.isWrapperFor(OracleConnection.class)) {
+            OracleConnection oracleConnection = connection.unwrap(OracleConnection.class);
+            if (!oracleConnection.getImplicitCachingEnabled()) {
+                oracleConnection.setImplicitCachingEnabled(true);
+                oracleConnection.setStatementCacheSize(cacheSize);
+            }
+        }
+        return connection;
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.sql2o;
+
+import griffon.annotations.core.Nonnull;
+import org.sql2o.connectionsources.ConnectionSource;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Hands out connections that pass every statement they create to a customizer,
+ * e.g. to set a fetch size Sql2o's {@code Query} does not expose.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+class StatementCustomizingConnectionSource implements ConnectionSource {
+    private final ConnectionSource delegate;
+    private final StatementCustomizer customizer;
+
+    StatementCustomizingConnectionSource(@Nonnull ConnectionSource delegate, @Nonnull StatementCustomizer customizer) {
+        this.delegate = requireNonNull(delegate, "Argument 'delegate' must not be null");
+        this.customizer = requireNonNull(customizer, "Argument 'customizer' must not be null");
+    }
+
+    @Nonnull
+    static ConnectionSource withFetchSize(@Nonnull ConnectionSource delegate, int fetchSize) {
+        return new StatementCustomizingConnectionSource(delegate, statement -> statement.setFetchSize(fetchSize));
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        Connection connection = delegate.getConnection();
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class}, (proxy, method, args) -> {
+            Object result;
+            try {
+                result = method.invoke(connection, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+            if (result instanceof Statement) {
+                customizer.customize((Statement) result);
+            }
+            return result;
+        });
+    }
+
+    @FunctionalInterface
+    interface StatementCustomizer {
+        void customize(@Nonnull Statement statement) throws SQLException;
+    }
+}
@@ -0,0 +1,259 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.sql2o;
+
+import griffon.annotations.core.Nonnull;
+import org.sql2o.connectionsources.ConnectionSource;
+
+import java.io.InputStream;
+import java.io.Reader;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Hands out connections whose statements report how long each execution took, how many rows it touched and
+ * which parameters were bound. Queries are timed until the driver hands back their result set; rows are counted
+ * as they are read and reported once the result set is closed, without charging the caller's processing of lazily
+ * fetched rows to the query.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+class StatementTimingConnectionSource implements ConnectionSource {
+    private static final int MAX_SUMMARIZED_PARAMETERS = 20;
+    private static final int MAX_SUMMARIZED_VALUE_LENGTH = 64;
+
+    private final ConnectionSource delegate;
+    private final StatementListener listener;
+
+    StatementTimingConnectionSource(@Nonnull ConnectionSource delegate, @Nonnull StatementListener listener) {
+        this.delegate = requireNonNull(delegate, "Argument 'delegate' must not be null");
+        this.listener = requireNonNull(listener, "Argument 'listener' must not be null");
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        Connection connection = delegate.getConnection();
+        return proxy(Connection.class, (proxy, method, args) -> {
+            Object result = invoke(connection, method, args);
+            if (result instanceof Statement) {
+                String sql = args != null && args.length > 0 && args[0] instanceof String ? (String) args[0] : null;
+                return timed((Statement) result, sql);
+            }
+            return result;
+        });
+    }
+
+    @Nonnull
+    private Statement timed(@Nonnull Statement statement, String preparedSql) {
+        StatementState state = new StatementState(preparedSql);
+        Class<? extends Statement> type = statement instanceof CallableStatement ? CallableStatement.class :
+            statement instanceof PreparedStatement ? PreparedStatement.class : Statement.class;
+        return proxy(type, (proxy, method, args) -> {
+            String name = method.getName();
+            if (name.startsWith("execute")) {
+                // a new execution implicitly closes the previous result set
+                state.finishQuery();
+                String sql = args != null && args.length > 0 && args[0] instanceof String ? (String) args[0] : state.sql;
+                long startedAt = System.nanoTime();
+                Object result;
+                try {
+                    result = invoke(statement, method, args);
+                } catch (Throwable t) {
+                    state.reset();
+                    throw t;
+                }
+                if (result instanceof ResultSet) {
+                    state.query = new RunningQuery(sql, state.summary(), System.nanoTime() - startedAt);
+                    state.reset();
+                    return countingRows((ResultSet) result, state.query);
+                }
+                listener.statementExecuted(sql, state.summary(), rowsOf(result, statement), System.nanoTime() - startedAt);
+                state.reset();
+                return result;
+            } else if ("close".equals(name)) {
+                try {
+                    return invoke(statement, method, args);
+                } finally {
+                    state.finishQuery();
+                }
+            } else if (name.startsWith("set") && args != null && args.length > 1 && args[0] instanceof Integer) {
+                state.bind((Integer) args[0], "setNull".equals(name) ? null : args[1]);
+            } else if ("addBatch".equals(name) && (args == null || args.length == 0)) {
+                state.batched++;
+            } else if ("clearParameters".equals(name)) {
+                state.parameters.clear();
+            }
+            return invoke(statement, method, args);
+        });
+    }
+
+    @Nonnull
+    private ResultSet countingRows(@Nonnull ResultSet resultSet, @Nonnull RunningQuery query) {
+        return proxy(ResultSet.class, (proxy, method, args) -> {
+            String name = method.getName();
+            if ("close".equals(name)) {
+                try {
+                    return invoke(resultSet, method, args);
+                } finally {
+                    query.finish();
+                }
+            }
+            Object result = invoke(resultSet, method, args);
+            if ("next".equals(name) && Boolean.TRUE.equals(result)) {
+                query.rows++;
+            }
+            return result;
+        });
+    }
+
+    private static long rowsOf(Object result, @Nonnull Statement statement) throws SQLException {
+        if (result instanceof Number) {
+            return Math.max(0L, ((Number) result).longValue());
+        }
+        if (result instanceof int[]) {
+            long rows = 0;
+            for (int count : (int[]) result) {
+                rows += count == Statement.SUCCESS_NO_INFO ? 1 : Math.max(0, count);
+            }
+            return rows;
+        }
+        if (result instanceof long[]) {
+            long rows = 0;
+            for (long count : (long[]) result) {
+                rows += count == Statement.SUCCESS_NO_INFO ? 1 : Math.max(0L, count);
+            }
+            return rows;
+        }
+        // execute() returns whether there's a result set, fall back to the update count
+        return Math.max(0, statement.getUpdateCount());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(@Nonnull Class<T> type, @Nonnull InvocationHandler handler) {
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, handler);
+    }
+
+    private static Object invoke(@Nonnull Object target, @Nonnull Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    private final class RunningQuery {
+        private final String sql;
+        private final String parameters;
+        private final long elapsedNanos;
+        private long rows;
+        private boolean finished;
+
+        private RunningQuery(String sql, @Nonnull String parameters, long elapsedNanos) {
+            this.sql = sql;
+            this.parameters = parameters;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        private void finish() {
+            if (!finished) {
+                finished = true;
+                listener.statementExecuted(sql, parameters, rows, elapsedNanos);
+            }
+        }
+    }
+
+    private static final class StatementState {
+        private final String sql;
+        private final Map<Integer, Object> parameters = new TreeMap<>();
+        private int batched;
+        private RunningQuery query;
+
+        private StatementState(String sql) {
+            this.sql = sql;
+        }
+
+        private void bind(int index, Object value) {
+            if (index <= MAX_SUMMARIZED_PARAMETERS) {
+                parameters.put(index, value);
+            }
+        }
+
+        private void reset() {
+            parameters.clear();
+            batched = 0;
+        }
+
+        private void finishQuery() {
+            if (query != null) {
+                query.finish();
+                query = null;
+            }
+        }
+
+        @Nonnull
+        private String summary() {
+            if (batched > 0) {
+                return "[" + batched + " batched rows]";
+            }
+            StringBuilder b = new StringBuilder("[");
+            for (Map.Entry<Integer, Object> e : parameters.entrySet()) {
+                if (b.length() > 1) {
+                    b.append(", ");
+                }
+                b.append(e.getKey()).append('=').append(summarize(e.getValue()));
+            }
+            if (parameters.size() == MAX_SUMMARIZED_PARAMETERS) {
+                b.append(", ...");
+            }
+            return b.append(']').toString();
+        }
+
+        @Nonnull
+        private static String summarize(Object value) {
+            if (value == null) {
+                return "null";
+            }
+            if (value instanceof byte[] || value instanceof InputStream || value instanceof Reader) {
+                return "<binary>";
+            }
+            String text = String.valueOf(value);
+            if (text.length() > MAX_SUMMARIZED_VALUE_LENGTH) {
+                text = text.substring(0, MAX_SUMMARIZED_VALUE_LENGTH) + "...";
+            }
+            return value instanceof CharSequence ? "'" + text + "'" : text;
+        }
+    }
+
+    @FunctionalInterface
+    interface StatementListener {
+        void statementExecuted(String sql, @Nonnull String parameters, long rows, long elapsedNanos);
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.sql2o.monitor;
+
+import griffon.annotations.core.Nonnull;
+import griffon.core.env.Metadata;
+import org.codehaus.griffon.runtime.monitor.AbstractMBeanRegistration;
+
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+
+import static griffon.util.GriffonNameUtils.requireNonBlank;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public class Sql2oCircuitBreakerMonitor extends AbstractMBeanRegistration implements Sql2oCircuitBreakerMonitorMXBean {
+    private final String datasourceName;
+    private final CircuitBreakerStatistics statistics;
+
+    public Sql2oCircuitBreakerMonitor(@Nonnull Metadata metadata, @Nonnull String datasourceName, @Nonnull CircuitBreakerStatistics statistics) {
+        super(metadata);
+        this.datasourceName = requireNonBlank(datasourceName, "Argument 'datasourceName' must not be blank");
+        this.statistics = requireNonNull(statistics, "Argument 'statistics' must not be null");
+    }
+
+    @Override
+    public ObjectName preRegister() throws MalformedObjectNameException {
+        return new ObjectName("griffon.plugins.sql2o:type=CircuitBreaker,application=" + metadata.getApplicationName() + ",name=" + datasourceName);
+    }
+
+    @Override
+    public String getDatasourceName() {
+        return datasourceName;
+    }
+
+    @Override
+    public String getState() {
+        return statistics.getState();
+    }
+
+    @Override
+    public int getConsecutiveFailures() {
+        return statistics.getConsecutiveFailures();
+    }
+
+    @Override
+    public long getOpenedCount() {
+        return statistics.getOpenedCount();
+    }
+
+    @Override
+    public long getRejectedCount() {
+        return statistics.getRejectedCount();
+    }
+
+    @Override
+    public long getOverloadedCount() {
+        return statistics.getOverloadedCount();
+    }
+
+    @Override
+    public int getBulkheadLimit() {
+        return statistics.getBulkheadLimit();
+    }
+
+    @Override
+    public int getBulkheadAvailable() {
+        return statistics.getBulkheadAvailable();
+    }
+
+    @Override
+    public int getBulkheadWaiting() {
+        return statistics.getBulkheadWaiting();
+    }
+
+    @Override
+    public void reset() {
+        statistics.reset();
+    }
+
+    public interface CircuitBreakerStatistics {
+        String getState();
+
+        int getConsecutiveFailures();
+
+        long getOpenedCount();
+
+        long getRejectedCount();
+
+        long getOverloadedCount();
+
+        int getBulkheadLimit();
+
+        int getBulkheadAvailable();
+
+        int getBulkheadWaiting();
+
+        void reset();
+    }
+}
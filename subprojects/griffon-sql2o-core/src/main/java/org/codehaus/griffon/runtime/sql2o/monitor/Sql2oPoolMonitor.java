@@ -0,0 +1,148 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.sql2o.monitor;
+
+import griffon.annotations.core.Nonnull;
+import griffon.core.env.Metadata;
+import org.codehaus.griffon.runtime.monitor.AbstractMBeanRegistration;
+
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+
+import static griffon.util.GriffonNameUtils.requireNonBlank;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public class Sql2oPoolMonitor extends AbstractMBeanRegistration implements Sql2oPoolMonitorMXBean {
+    private final String datasourceName;
+    private final PoolStatistics statistics;
+
+    public Sql2oPoolMonitor(@Nonnull Metadata metadata, @Nonnull String datasourceName, @Nonnull PoolStatistics statistics) {
+        super(metadata);
+        this.datasourceName = requireNonBlank(datasourceName, "Argument 'datasourceName' must not be blank");
+        this.statistics = requireNonNull(statistics, "Argument 'statistics' must not be null");
+    }
+
+    @Override
+    public ObjectName preRegister() throws MalformedObjectNameException {
+        return new ObjectName("griffon.plugins.sql2o:type=Pool,application=" + metadata.getApplicationName() + ",name=" + datasourceName);
+    }
+
+    @Override
+    public String getDatasourceName() {
+        return datasourceName;
+    }
+
+    @Override
+    public int getActiveConnections() {
+        return statistics.getActiveConnections();
+    }
+
+    @Override
+    public int getIdleConnections() {
+        return statistics.getIdleConnections();
+    }
+
+    @Override
+    public int getTotalConnections() {
+        return statistics.getTotalConnections();
+    }
+
+    @Override
+    public int getThreadsAwaitingConnection() {
+        return statistics.getThreadsAwaitingConnection();
+    }
+
+    @Override
+    public int getMaximumPoolSize() {
+        return statistics.getMaximumPoolSize();
+    }
+
+    @Override
+    public int getMinimumIdle() {
+        return statistics.getMinimumIdle();
+    }
+
+    @Override
+    public boolean isAdaptiveSizing() {
+        return statistics.isAdaptiveSizing();
+    }
+
+    @Override
+    public long getResizeCount() {
+        return statistics.getResizeCount();
+    }
+
+    @Override
+    public long getAcquisitionCount() {
+        return statistics.getAcquisitionCount();
+    }
+
+    @Override
+    public double getAcquisitionP50Millis() {
+        return statistics.getAcquisitionPercentileMillis(50d);
+    }
+
+    @Override
+    public double getAcquisitionP99Millis() {
+        return statistics.getAcquisitionPercentileMillis(99d);
+    }
+
+    @Override
+    public double getAcquisitionMaxMillis() {
+        return statistics.getMaxAcquisitionMillis();
+    }
+
+    @Override
+    public void reset() {
+        statistics.reset();
+    }
+
+    /**
+     * Pool figures of a single datasource. Connection counts are {@code -1} while the datasource is not
+     * connected or when its pool can't be inspected.
+     */
+    public interface PoolStatistics {
+        int getActiveConnections();
+
+        int getIdleConnections();
+
+        int getTotalConnections();
+
+        int getThreadsAwaitingConnection();
+
+        int getMaximumPoolSize();
+
+        int getMinimumIdle();
+
+        boolean isAdaptiveSizing();
+
+        long getResizeCount();
+
+        long getAcquisitionCount();
+
+        double getAcquisitionPercentileMillis(double percentile);
+
+        double getMaxAcquisitionMillis();
+
+        void reset();
+    }
+}
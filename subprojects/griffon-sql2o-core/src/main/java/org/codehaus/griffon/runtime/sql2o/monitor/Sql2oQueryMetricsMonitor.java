@@ -0,0 +1,129 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.sql2o.monitor;
+
+import griffon.annotations.core.Nonnull;
+import griffon.core.env.Metadata;
+import org.codehaus.griffon.runtime.monitor.AbstractMBeanRegistration;
+
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+import java.util.Map;
+
+import static griffon.util.GriffonNameUtils.requireNonBlank;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public class Sql2oQueryMetricsMonitor extends AbstractMBeanRegistration implements Sql2oQueryMetricsMonitorMXBean {
+    private final String datasourceName;
+    private final QueryStatistics statistics;
+
+    public Sql2oQueryMetricsMonitor(@Nonnull Metadata metadata, @Nonnull String datasourceName, @Nonnull QueryStatistics statistics) {
+        super(metadata);
+        this.datasourceName = requireNonBlank(datasourceName, "Argument 'datasourceName' must not be blank");
+        this.statistics = requireNonNull(statistics, "Argument 'statistics' must not be null");
+    }
+
+    @Override
+    public ObjectName preRegister() throws MalformedObjectNameException {
+        return new ObjectName("griffon.plugins.sql2o:type=QueryMetrics,application=" + metadata.getApplicationName() + ",name=" + datasourceName);
+    }
+
+    @Override
+    public String getDatasourceName() {
+        return datasourceName;
+    }
+
+    @Override
+    public long getCallbackCount() {
+        return statistics.getCallbackCount();
+    }
+
+    @Override
+    public long getInFlightCount() {
+        return statistics.getInFlightCount();
+    }
+
+    @Override
+    public long getErrorCount() {
+        return statistics.getErrorCount();
+    }
+
+    @Override
+    public long getRetryCount() {
+        return statistics.getRetryCount();
+    }
+
+    @Override
+    public double getLatencyP50Millis() {
+        return statistics.getLatencyPercentileMillis(50d);
+    }
+
+    @Override
+    public double getLatencyP95Millis() {
+        return statistics.getLatencyPercentileMillis(95d);
+    }
+
+    @Override
+    public double getLatencyP99Millis() {
+        return statistics.getLatencyPercentileMillis(99d);
+    }
+
+    @Override
+    public double getLatencyMaxMillis() {
+        return statistics.getMaxLatencyMillis();
+    }
+
+    @Override
+    public long getSlowQueryThresholdMillis() {
+        return statistics.getSlowQueryThresholdMillis();
+    }
+
+    @Override
+    public Map<String, Long> getSlowQueryCounts() {
+        return statistics.getSlowQueryCounts();
+    }
+
+    @Override
+    public void reset() {
+        statistics.reset();
+    }
+
+    public interface QueryStatistics {
+        long getCallbackCount();
+
+        long getInFlightCount();
+
+        long getErrorCount();
+
+        long getRetryCount();
+
+        double getLatencyPercentileMillis(double percentile);
+
+        double getMaxLatencyMillis();
+
+        long getSlowQueryThresholdMillis();
+
+        Map<String, Long> getSlowQueryCounts();
+
+        void reset();
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.sql2o.monitor;
+
+import griffon.annotations.core.Nonnull;
+import griffon.core.env.Metadata;
+import org.codehaus.griffon.runtime.monitor.AbstractMBeanRegistration;
+
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+
+import static griffon.util.GriffonNameUtils.requireNonBlank;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public class Sql2oStatementCacheMonitor extends AbstractMBeanRegistration implements Sql2oStatementCacheMonitorMXBean {
+    private final String datasourceName;
+    private final StatementCacheStatistics statistics;
+
+    public Sql2oStatementCacheMonitor(@Nonnull Metadata metadata, @Nonnull String datasourceName, @Nonnull StatementCacheStatistics statistics) {
+        super(metadata);
+        this.datasourceName = requireNonBlank(datasourceName, "Argument 'datasourceName' must not be blank");
+        this.statistics = requireNonNull(statistics, "Argument 'statistics' must not be null");
+    }
+
+    @Override
+    public ObjectName preRegister() throws MalformedObjectNameException {
+        return new ObjectName("griffon.plugins.sql2o:type=StatementCache,application=" + metadata.getApplicationName() + ",name=" + datasourceName);
+    }
+
+    @Override
+    public String getDatasourceName() {
+        return datasourceName;
+    }
+
+    @Override
+    public int getSize() {
+        return statistics.getSize();
+    }
+
+    @Override
+    public int getMaxSize() {
+        return statistics.getMaxSize();
+    }
+
+    @Override
+    public long getHits() {
+        return statistics.getHits();
+    }
+
+    @Override
+    public long getMisses() {
+        return statistics.getMisses();
+    }
+
+    @Override
+    public long getEvictions() {
+        return statistics.getEvictions();
+    }
+
+    @Override
+    public double getHitRatio() {
+        long hits = getHits();
+        long total = hits + getMisses();
+        return total == 0 ? 0d : (double) hits / total;
+    }
+
+    @Override
+    public void clear() {
+        statistics.clear();
+    }
+
+    public interface StatementCacheStatistics {
+        int getSize();
+
+        int getMaxSize();
+
+        long getHits();
+
+        long getMisses();
+
+        long getEvictions();
+
+        void clear();
+    }
+}
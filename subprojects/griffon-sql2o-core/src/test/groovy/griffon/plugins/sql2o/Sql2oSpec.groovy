@@ -23,20 +23,47 @@ import griffon.plugins.datasource.events.DataSourceConnectEndEvent
 import griffon.plugins.datasource.events.DataSourceConnectStartEvent
 import griffon.plugins.datasource.events.DataSourceDisconnectEndEvent
 import griffon.plugins.datasource.events.DataSourceDisconnectStartEvent
+import griffon.plugins.sql2o.events.Sql2oCircuitOpenEvent
 import griffon.plugins.sql2o.events.Sql2oConnectEndEvent
 import griffon.plugins.sql2o.events.Sql2oConnectStartEvent
 import griffon.plugins.sql2o.events.Sql2oDisconnectEndEvent
 import griffon.plugins.sql2o.events.Sql2oDisconnectStartEvent
+import griffon.plugins.sql2o.events.Sql2oSlowQueryEvent
+import griffon.plugins.sql2o.exceptions.OverloadedSql2oException
+import griffon.plugins.sql2o.exceptions.PartialSql2oException
+import griffon.plugins.sql2o.exceptions.RuntimeSql2oException
+import griffon.plugins.sql2o.exceptions.UnavailableSql2oException
 import griffon.test.core.GriffonUnitRule
+import org.codehaus.griffon.runtime.sql2o.Sql2oMetrics
+import org.codehaus.griffon.runtime.sql2o.Sql2oPools
 import org.junit.Rule
+import org.sql2o.Connection
 import org.sql2o.Sql2o
 import org.sql2o.StatementRunnable
 import org.sql2o.StatementRunnableWithResult
+import org.sql2o.quirks.NoQuirks
+import org.sql2o.quirks.Quirks
 import spock.lang.Specification
 import spock.lang.Unroll
 
 import javax.application.event.EventHandler
 import javax.inject.Inject
+import java.sql.ResultSet
+import java.sql.SQLException
+import java.sql.SQLTransactionRollbackException
+import java.time.DayOfWeek
+import java.time.Duration
+import java.util.concurrent.Callable
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.TimeoutException
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.stream.Collectors
+import java.util.stream.Stream
 
 @Unroll
 class Sql2oSpec extends Specification {
@@ -53,6 +80,15 @@ class Sql2oSpec extends Specification {
     @Inject
     private GriffonApplication application
 
+    @Inject
+    private Sql2oMetrics sql2oMetrics
+
+    @Inject
+    private Sql2oPools sql2oPools
+
+    @Inject
+    private Sql2oRowMappers sql2oRowMappers
+
     void 'Open and close default sql2o'() {
         given:
         List eventNames = [
@@ -139,6 +175,108 @@ class Sql2oSpec extends Specification {
         'bogus' | _
     }
 
+    void 'Concurrent first use of #name creates a single Sql2o'() {
+        given:
+        TestEventHandler testEventHandler = new TestEventHandler()
+        application.eventRouter.subscribe(testEventHandler)
+        int threads = 8
+        CountDownLatch latch = new CountDownLatch(1)
+        ExecutorService executor = Executors.newFixedThreadPool(threads)
+
+        when:
+        List instances = (1..threads).collect {
+            executor.submit({
+                latch.await()
+                sql2oHandler.withSql2o(name) { String datasourceName, Sql2o sql2o -> sql2o }
+            } as Callable)
+        }
+        latch.countDown()
+        instances = instances*.get()
+        executor.shutdown()
+
+        then:
+        instances.unique(false) { System.identityHashCode(it) }.size() == 1
+        testEventHandler.events.count { it == 'Sql2oConnectStartEvent' } == 1
+        testEventHandler.events.count { it == 'DataSourceConnectStartEvent' } == 1
+
+        where:
+        name      | _
+        'default' | _
+        'people'  | _
+    }
+
+    void 'Execute callback asynchronously on #name Sql2o'() {
+        given:
+        String caller = Thread.currentThread().name
+
+        when:
+        String worker = sql2oHandler.withSql2oAsync(name) { String datasourceName, Sql2o sql2o ->
+            assert datasourceName == name && sql2o
+            Thread.currentThread().name
+        }.get()
+
+        then:
+        worker != caller
+        worker.startsWith("sql2o-${name}-")
+
+        where:
+        name      | _
+        'default' | _
+        'people'  | _
+    }
+
+    void 'Asynchronous callback failure completes the future exceptionally'() {
+        when:
+        sql2oHandler.withSql2oAsync { String datasourceName, Sql2o sql2o ->
+            throw new IllegalStateException('boom')
+        }.get()
+
+        then:
+        ExecutionException e = thrown(ExecutionException)
+        e.cause instanceof RuntimeSql2oException
+        e.cause.cause instanceof IllegalStateException
+    }
+
+    void 'Virtual executor falls back to platform threads before Java 21'() {
+        when:
+        Thread worker = sql2oHandler.withSql2oAsync('virtual') { String datasourceName, Sql2o sql2o ->
+            Thread.currentThread()
+        }.get()
+
+        then:
+        worker.name.startsWith('sql2o-virtual-')
+        isVirtual(worker) == (javaFeatureVersion() >= 21)
+    }
+
+    void 'Virtual executor never runs more callbacks than the pool size'() {
+        given:
+        AtomicInteger active = new AtomicInteger()
+        AtomicInteger peak = new AtomicInteger()
+
+        when:
+        List<CompletableFuture<Void>> futures = (1..6).collect {
+            sql2oHandler.withSql2oAsync('virtual') { String datasourceName, Sql2o sql2o ->
+                peak.accumulateAndGet(active.incrementAndGet()) { int a, int b -> Math.max(a, b) }
+                Thread.sleep(50)
+                active.decrementAndGet()
+                null
+            }
+        }
+        CompletableFuture.allOf(futures as CompletableFuture[]).get(5, TimeUnit.SECONDS)
+
+        then:
+        peak.get() == 2
+    }
+
+    void 'Invalid executor value is rejected'() {
+        when:
+        sql2oHandler.withSql2oAsync('bogusExecutor') { String datasourceName, Sql2o sql2o -> null }
+
+        then:
+        IllegalArgumentException e = thrown(IllegalArgumentException)
+        e.message == "Invalid executor 'carrier' for datasource 'bogusExecutor'. Valid values are [platform, virtual]"
+    }
+
     void 'Execute statements on people table'() {
         when:
         List peopleIn = sql2oHandler.withSql2o('people') { String datasourceName, Sql2o sql2o ->
@@ -173,11 +311,742 @@ class Sql2oSpec extends Specification {
         peopleIn == peopleOut
     }
 
+    void 'Insert people in batches of #batchSize'() {
+        given:
+        String sql = 'INSERT INTO people(id, name, lastname) VALUES (:id, :name, :lastname)'
+        List<Person> people = [[id: 1, name: 'Danno', lastname: 'Ferrin'],
+                               [id: 2, name: 'Andres', lastname: 'Almiray'],
+                               [id: 3, name: 'James', lastname: 'Williams'],
+                               [id: 4, name: 'Guillaume', lastname: 'Laforge'],
+                               [id: 5, name: 'Jim', lastname: 'Shingler'],
+                               [id: 6, name: 'Alexander', lastname: 'Klein'],
+                               [id: 7, name: 'Rene', lastname: 'Groeschke']].collect { new Person(it) }
+
+        when:
+        long inserted = sql2oHandler.withSql2oBatch('people', sql, people, batchSize)
+        List peopleOut = sql2oHandler.withSql2o('people') { String datasourceName, Sql2o sql2o ->
+            sql2o.withConnection({ connection, arg ->
+                connection.createQuery('SELECT id, name, lastname FROM people ORDER BY id').executeAndFetch(Person)
+            } as StatementRunnableWithResult)
+        }
+
+        then:
+        inserted == people.size()
+        peopleOut == people
+
+        where:
+        batchSize << [1, 3, 7, 100]
+    }
+
+    void 'Failed batch rolls back every chunk'() {
+        given:
+        String sql = 'INSERT INTO people(id, name, lastname) VALUES (:id, :name, :lastname)'
+        List<Map> rows = [[id: 1, name: 'Danno', lastname: 'Ferrin'],
+                          [id: 2, name: 'Andres', lastname: 'Almiray'],
+                          [id: 1, name: 'James', lastname: 'Williams']]
+
+        when:
+        sql2oHandler.withSql2oBatch('people', sql, rows.stream(), 2)
+
+        then:
+        thrown(RuntimeSql2oException)
+        0 == sql2oHandler.withSql2o('people') { String datasourceName, Sql2o sql2o ->
+            sql2o.withConnection({ connection, arg ->
+                connection.createQuery('SELECT COUNT(*) FROM people').executeScalar(Integer)
+            } as StatementRunnableWithResult)
+        }
+    }
+
+    void 'Bulk load people in multi-row inserts'() {
+        given:
+        List<Object[]> rows = (1..7).collect { [it, "name${it}", it % 3 ? "lastname${it}" : null] as Object[] }
+
+        when:
+        long loaded = sql2oHandler.bulkLoad('people', 'people', ['id', 'name', 'lastname'], rows.stream())
+        List<Person> peopleOut = sql2oHandler.withSql2o('people') { String datasourceName, Sql2o sql2o ->
+            sql2o.withConnection({ connection, arg ->
+                connection.createQuery('SELECT id, name, lastname FROM people ORDER BY id').executeAndFetch(Person)
+            } as StatementRunnableWithResult)
+        }
+
+        then:
+        loaded == 7L
+        peopleOut*.id == (1L..7L).toList()
+        peopleOut*.lastname == ['lastname1', 'lastname2', null, 'lastname4', 'lastname5', null, 'lastname7']
+    }
+
+    void 'Stream people lazily'() {
+        given:
+        String sql = 'INSERT INTO people(id, name, lastname) VALUES (:id, :name, :lastname)'
+        List<Person> people = (1..20).collect { new Person(id: it, name: "name${it}", lastname: "lastname${it}") }
+        sql2oHandler.withSql2oBatch('people', sql, people, 5)
+
+        when:
+        List<Person> peopleOut = sql2oHandler.streamSql2o('people', 'SELECT id, name, lastname FROM people WHERE id > :id ORDER BY id', [id: 10], Person)
+            .withCloseable { stream -> stream.collect(Collectors.toList()) }
+
+        then:
+        peopleOut == people[10..-1]
+    }
+
+    void 'Fetch people as columns'() {
+        given:
+        String sql = 'INSERT INTO people(id, name, lastname) VALUES (:id, :name, :lastname)'
+        List<Person> people = (1..6).collect { new Person(id: it, name: "name${it}", lastname: "lastname${it % 2}") }
+        sql2oHandler.withSql2oBatch('people', sql, people, 5)
+
+        when:
+        Sql2oColumns columns = sql2oHandler.fetchColumns('people', 'SELECT id, lastname FROM people WHERE id > :id ORDER BY id', [id: 2])
+
+        then:
+        columns.rowCount == 4
+        columns.getColumnType('id') == Sql2oColumns.ColumnType.LONG
+        columns.getLongs('id') == [3L, 4L, 5L, 6L] as long[]
+        columns.getDictionary('lastname') == ['lastname1', 'lastname0'] as String[]
+        columns.getCodes('lastname') == [0, 1, 0, 1] as int[]
+        columns.getString('lastname', 1) == 'lastname0'
+    }
+
+    void 'Registered row mappers populate Person on people'() {
+        given:
+        String sql = 'INSERT INTO people(id, name, lastname) VALUES (:id, :name, :lastname)'
+        List<Person> people = (1..5).collect { new Person(id: it, name: "name${it}", lastname: "lastname${it}") }
+        sql2oHandler.withSql2oBatch('people', sql, people, 5)
+        CountingPersonRowMapper mapper = new CountingPersonRowMapper()
+        sql2oRowMappers.register(mapper)
+
+        when:
+        List<Person> streamed = sql2oHandler.streamSql2o('people', 'SELECT id, name, lastname FROM people ORDER BY id', [:], Person)
+            .withCloseable { stream -> stream.collect(Collectors.toList()) }
+        List<Person> cached = sql2oHandler.withCachedQuery('people', 'SELECT name, lastname FROM people WHERE id = :id', [id: 3], Person, Duration.ofMinutes(1))
+
+        then:
+        streamed == people
+        cached*.name == ['name3']
+        cached*.id == [0L]
+        mapper.rows.get() == 6
+    }
+
+    void 'Row mappers are only tied to datasources that turn them on'() {
+        when:
+        Sql2o defaultSql2o = sql2oHandler.withSql2o { String datasourceName, Sql2o sql2o -> sql2o }
+        Sql2o peopleSql2o = sql2oHandler.withSql2o('people') { String datasourceName, Sql2o sql2o -> sql2o }
+
+        then:
+        defaultSql2o.quirks instanceof NoQuirks
+        Sql2oRowMappers.of(defaultSql2o) == null
+        Sql2oRowMappers.of(peopleSql2o).is(sql2oRowMappers)
+    }
+
+    void 'Prepared queries on people convert enum arguments'() {
+        given:
+        String sql = 'INSERT INTO people(id, name, lastname) VALUES (:id, :name, :lastname)'
+        sql2oHandler.withSql2oBatch('people', sql, [[id: 1, name: 'Danno', lastname: 'MONDAY'],
+                                                    [id: 2, name: 'Andres', lastname: 'FRIDAY']], 10)
+        Sql2oPreparedQuery query = new Sql2oPreparedQuery('SELECT name FROM people WHERE lastname = ?', 1)
+
+        when:
+        List<String> names = query.fetch(sql2oHandler, 'people', [DayOfWeek.FRIDAY] as Object[], String)
+
+        then:
+        names == ['Andres']
+    }
+
+    void 'Repeated statements on people are parsed once'() {
+        given:
+        String sql = 'SELECT COUNT(*) FROM people WHERE id > :id OR lastname = :lastname'
+
+        when:
+        def statementCache = sql2oHandler.withSql2o('people') { String datasourceName, Sql2o sql2o ->
+            3.times { int id ->
+                sql2o.withConnection({ connection, arg ->
+                    connection.createQuery(sql).addParameter('id', id).addParameter('lastname', 'x').executeScalar(Integer)
+                } as StatementRunnableWithResult)
+            }
+            sql2o.quirks.sqlParameterParsingStrategy
+        }
+
+        then:
+        statementCache.misses == 1
+        statementCache.hits == 2
+        statementCache.size == 1
+    }
+
+    void 'Cached query results are served until the table is invalidated'() {
+        given:
+        String insert = 'INSERT INTO people(id, name, lastname) VALUES (:id, :name, :lastname)'
+        String query = 'SELECT id, name, lastname FROM people WHERE id > :id ORDER BY id'
+        sql2oHandler.withSql2oBatch('people', insert, (1..3).collect { [id: it, name: "name${it}", lastname: "lastname${it}"] }, 10)
+
+        when:
+        List<Person> first = sql2oHandler.withCachedQuery('people', query, [id: 0], Person, Duration.ofMinutes(1))
+        sql2oHandler.withSql2oBatch('people', insert, [[id: 4, name: 'name4', lastname: 'lastname4']], 10)
+        List<Person> second = sql2oHandler.withCachedQuery('people', query, [id: 0], Person, Duration.ofMinutes(1))
+        sql2oHandler.invalidateCachedQueries('people', 'people')
+        List<Person> third = sql2oHandler.withCachedQuery('people', query, [id: 0], Person, Duration.ofMinutes(1))
+
+        then:
+        first.size() == 3
+        second.is(first)
+        third.size() == 4
+    }
+
+    void 'Callbacks on #name are counted and timed'() {
+        when:
+        3.times { sql2oHandler.withSql2o(name) { String datasourceName, Sql2o sql2o -> Thread.sleep(2) } }
+        sql2oHandler.withSql2o(name) { String datasourceName, Sql2o sql2o -> throw new IllegalStateException() }
+
+        then:
+        thrown(RuntimeSql2oException)
+        def metrics = sql2oMetrics.metricsFor(name)
+        metrics.callbackCount == 4
+        metrics.errorCount == 1
+        metrics.inFlightCount == 0
+        metrics.getLatencyPercentileMillis(50d) >= 2d
+        metrics.maxLatencyMillis >= metrics.getLatencyPercentileMillis(99d)
+
+        where:
+        name << ['default', 'internal', 'people']
+    }
+
+    void 'Pool of people grows while callers wait and shrinks when idle'() {
+        given:
+        sql2oHandler.withSql2o('people') { String datasourceName, Sql2o sql2o ->
+            sql2o.withConnection({ connection, arg -> connection.createQuery('SELECT 1').executeScalar() } as StatementRunnableWithResult)
+        }
+        def pool = sql2oPools.poolFor('people')
+        int initial = pool.maximumPoolSize
+
+        when:
+        pool.acquired(TimeUnit.MILLISECONDS.toNanos(50L))
+        pool.adjust()
+        int grown = pool.maximumPoolSize
+        pool.adjust()
+
+        then:
+        pool.acquisitionCount == 2
+        pool.activeConnections == 0
+        grown == Math.min(12, initial + Math.max(1, initial.intdiv(4)))
+        pool.maximumPoolSize == grown - Math.max(1, grown.intdiv(8))
+        pool.minimumIdle <= pool.maximumPoolSize
+        pool.resizeCount == 2
+    }
+
+    void 'Statements slower than the threshold on internal are reported'() {
+        given:
+        SlowQueryEventHandler slowQueryEventHandler = new SlowQueryEventHandler()
+        application.eventRouter.subscribe(slowQueryEventHandler)
+
+        when:
+        sql2oHandler.withSql2o('internal') { String datasourceName, Sql2o sql2o ->
+            sql2o.withConnection({ connection, arg ->
+                connection.createQuery('CREATE ALIAS IF NOT EXISTS SLEEP FOR "java.lang.Thread.sleep"').executeUpdate()
+                connection.createQuery('SELECT 1').executeScalar(Integer)
+                connection.createQuery('CALL SLEEP(:millis)').addParameter('millis', 50L).executeScalar()
+            } as StatementRunnable)
+        }
+
+        then:
+        slowQueryEventHandler.latch.await(5, TimeUnit.SECONDS)
+        Sql2oSlowQueryEvent event = slowQueryEventHandler.event
+        event.name == 'internal'
+        event.sql == 'CALL SLEEP(?)'
+        event.parameters == '[1=50]'
+        event.elapsedMillis >= 50
+        sql2oMetrics.metricsFor('internal').slowQueryCounts['CALL SLEEP(?)'] == 1L
+    }
+
+    void 'Time spent reading lazily fetched rows on internal is not charged to the query'() {
+        when:
+        int count = sql2oHandler.withSql2o('internal') { String datasourceName, Sql2o sql2o ->
+            sql2o.withConnection({ connection, arg ->
+                int read = 0
+                connection.createQuery('SELECT X FROM SYSTEM_RANGE(1, 3)').executeAndFetchTableLazy().withCloseable { table ->
+                    table.rows().each {
+                        Thread.sleep(30)
+                        read++
+                    }
+                }
+                read
+            } as StatementRunnableWithResult)
+        }
+
+        then:
+        count == 3
+        !sql2oMetrics.metricsFor('internal').slowQueryCounts.containsKey('SELECT X FROM SYSTEM_RANGE(1, 3)')
+    }
+
+    void 'Read-only callbacks on reports are spread across its replicas'() {
+        when:
+        List<String> names = (1..4).collect {
+            sql2oHandler.withSql2oReadOnly('reports') { String datasourceName, Sql2o sql2o -> datasourceName }
+        }
+
+        then:
+        names == ['reportsReplica1', 'reportsReplica2', 'reportsReplica1', 'reportsReplica2']
+    }
+
+    void 'Read-only callbacks stay on the primary after using it'() {
+        when:
+        sql2oHandler.withSql2o('reports') { String datasourceName, Sql2o sql2o -> datasourceName }
+        String reportsName = sql2oHandler.withSql2oReadOnly('reports') { String datasourceName, Sql2o sql2o -> datasourceName }
+        String peopleName = sql2oHandler.withSql2oReadOnly('people') { String datasourceName, Sql2o sql2o -> datasourceName }
+
+        then:
+        reportsName == 'reports'
+        peopleName == 'people'
+    }
+
+    void 'Run a callback on several datasources at once'() {
+        when:
+        Map<String, String> names = sql2oHandler.withAllSql2o(['default', 'internal', 'people']) { String datasourceName, Sql2o sql2o ->
+            datasourceName.toUpperCase()
+        }
+
+        then:
+        names == [default: 'DEFAULT', internal: 'INTERNAL', people: 'PEOPLE']
+    }
+
+    void 'Failures and timeouts across datasources are collected'() {
+        when:
+        sql2oHandler.withAllSql2o(['default', 'internal', 'people'], Duration.ofMillis(500)) { String datasourceName, Sql2o sql2o ->
+            if (datasourceName == 'internal') throw new IllegalStateException('boom')
+            if (datasourceName == 'people') Thread.sleep(5000)
+            datasourceName
+        }
+
+        then:
+        PartialSql2oException e = thrown(PartialSql2oException)
+        e.results == [default: 'default']
+        e.failures.keySet() == ['internal', 'people'] as Set
+        e.failures.internal instanceof RuntimeSql2oException
+        e.failures.people instanceof TimeoutException
+    }
+
+    void 'Transient failures of idempotent callbacks on internal are retried'() {
+        given:
+        int attempts = 0
+
+        when:
+        String result = sql2oHandler.withSql2o('internal', { String datasourceName, Sql2o sql2o ->
+            if (++attempts < 3) throw new SQLTransactionRollbackException('deadlock', '40001')
+            'done'
+        } as Sql2oIdempotentCallback<String>)
+
+        then:
+        result == 'done'
+        attempts == 3
+        sql2oMetrics.metricsFor('internal').retryCount == 2
+    }
+
+    void 'A call on internal that recovers after retries counts once towards its circuit breaker'() {
+        given:
+        CircuitOpenEventHandler circuitOpenEventHandler = new CircuitOpenEventHandler()
+        application.eventRouter.subscribe(circuitOpenEventHandler)
+        int attempts = 0
+
+        when:
+        String result = sql2oHandler.withSql2o('internal', { String datasourceName, Sql2o sql2o ->
+            if (++attempts < 3) throw new SQLTransactionRollbackException('deadlock', '40001')
+            'done'
+        } as Sql2oIdempotentCallback<String>)
+
+        then:
+        result == 'done'
+        attempts == 3
+        !circuitOpenEventHandler.latch.await(100, TimeUnit.MILLISECONDS)
+    }
+
+    void 'Transient failures of transactions on internal are retried'() {
+        given:
+        int attempts = 0
+
+        when:
+        String result = sql2oHandler.withSql2oTransaction('internal') { String datasourceName, Connection connection ->
+            if (++attempts < 3) throw new SQLTransactionRollbackException('deadlock', '40001')
+            'done'
+        }
+
+        then:
+        result == 'done'
+        attempts == 3
+    }
+
+    void 'Transient failures of plain callbacks on internal are not retried'() {
+        given:
+        int attempts = 0
+
+        when:
+        sql2oHandler.withSql2o('internal') { String datasourceName, Sql2o sql2o ->
+            attempts++
+            throw new SQLTransactionRollbackException('deadlock', '40001')
+        }
+
+        then:
+        thrown(RuntimeSql2oException)
+        attempts == 1
+    }
+
+    void 'Permanent failures on internal are not retried'() {
+        given:
+        int attempts = 0
+
+        when:
+        sql2oHandler.withSql2o('internal') { String datasourceName, Sql2o sql2o ->
+            attempts++
+            throw new SQLException('syntax error', '42000')
+        }
+
+        then:
+        thrown(RuntimeSql2oException)
+        attempts == 1
+    }
+
+    void 'A batch on internal retried after a transient failure starts over from the first item'() {
+        given:
+        sql2oHandler.withSql2o('internal') { String datasourceName, Sql2o sql2o ->
+            sql2o.withConnection({ connection, arg ->
+                connection.createQuery('CREATE TABLE IF NOT EXISTS batch_items(id INT PRIMARY KEY)').executeUpdate()
+                connection.createQuery('DELETE FROM batch_items').executeUpdate()
+            } as StatementRunnable)
+        }
+        int passes = 0
+        Iterable<Map<String, Object>> items = {
+            int pass = ++passes
+            int index = 0
+            [hasNext: { index < 7 },
+             next   : {
+                 // the first pass fails after two chunks were flushed
+                 if (pass == 1 && index == 4) throw new SQLTransactionRollbackException('deadlock', '40001')
+                 [id: ++index]
+             }] as Iterator<Map<String, Object>>
+        } as Iterable<Map<String, Object>>
+
+        when:
+        long inserted = sql2oHandler.withSql2oBatch('internal', 'INSERT INTO batch_items(id) VALUES (:id)', items, 2)
+
+        then:
+        passes == 2
+        inserted == 7L
+        countBatchItems() == 7
+    }
+
+    void 'A streamed batch on internal is not retried after a transient failure'() {
+        given:
+        sql2oHandler.withSql2o('internal') { String datasourceName, Sql2o sql2o ->
+            sql2o.withConnection({ connection, arg ->
+                connection.createQuery('CREATE TABLE IF NOT EXISTS batch_items(id INT PRIMARY KEY)').executeUpdate()
+                connection.createQuery('DELETE FROM batch_items').executeUpdate()
+            } as StatementRunnable)
+        }
+        Stream<Map<String, Object>> items = (1..7).stream().map { Integer id ->
+            if (id == 5) throw new SQLTransactionRollbackException('deadlock', '40001')
+            [id: id] as Map<String, Object>
+        }
+
+        when:
+        sql2oHandler.withSql2oBatch('internal', 'INSERT INTO batch_items(id) VALUES (:id)', items, 2)
+
+        then:
+        thrown(RuntimeSql2oException)
+        countBatchItems() == 0
+    }
+
+    void 'Repeated database failures open the circuit of reportsReplica2'() {
+        given:
+        CircuitOpenEventHandler circuitOpenEventHandler = new CircuitOpenEventHandler()
+        application.eventRouter.subscribe(circuitOpenEventHandler)
+        int attempts = 0
+
+        when:
+        3.times {
+            try {
+                sql2oHandler.withSql2o('reportsReplica2') { String datasourceName, Sql2o sql2o ->
+                    attempts++
+                    throw new SQLException('connection refused', '08001')
+                }
+            } catch (UnavailableSql2oException e) {
+                throw e
+            } catch (RuntimeSql2oException ignored) {
+                // expected for the first two attempts
+            }
+        }
+
+        then:
+        thrown(UnavailableSql2oException)
+        attempts == 2
+        circuitOpenEventHandler.latch.await(5, TimeUnit.SECONDS)
+        circuitOpenEventHandler.event.name == 'reportsReplica2'
+    }
+
+    void 'Callbacks over the bulkhead of reportsReplica1 are rejected as overloaded'() {
+        given:
+        CountDownLatch started = new CountDownLatch(1)
+        CountDownLatch release = new CountDownLatch(1)
+        CompletableFuture<Boolean> running = sql2oHandler.withSql2oAsync('reportsReplica1') { String datasourceName, Sql2o sql2o ->
+            started.countDown()
+            release.await(10, TimeUnit.SECONDS)
+        }
+        started.await()
+
+        when:
+        try {
+            sql2oHandler.withSql2o('reportsReplica1') { String datasourceName, Sql2o sql2o -> true }
+        } finally {
+            release.countDown()
+        }
+
+        then:
+        thrown(OverloadedSql2oException)
+        running.get()
+        sql2oHandler.withSql2o('reportsReplica1') { String datasourceName, Sql2o sql2o -> true }
+    }
+
+    void 'Nested callbacks on reportsReplica1 run under the outer bulkhead permit'() {
+        when:
+        String inner = sql2oHandler.withSql2o('reportsReplica1') { String outerName, Sql2o outer ->
+            sql2oHandler.withSql2o('reportsReplica1') { String datasourceName, Sql2o sql2o -> 'inner' }
+        }
+
+        then:
+        inner == 'inner'
+        sql2oHandler.withSql2o('reportsReplica1') { String datasourceName, Sql2o sql2o -> true }
+    }
+
+    void 'Reloading people keeps running callbacks on the previous instance'() {
+        given:
+        Sql2o previous = sql2oHandler.withSql2o('people') { String datasourceName, Sql2o sql2o -> sql2o }
+        CountDownLatch started = new CountDownLatch(1)
+        CountDownLatch release = new CountDownLatch(1)
+        CompletableFuture<Integer> running = sql2oHandler.withSql2oAsync('people') { String datasourceName, Sql2o sql2o ->
+            started.countDown()
+            release.await(10, TimeUnit.SECONDS)
+            sql2o.withConnection({ connection, arg ->
+                connection.createQuery('SELECT COUNT(*) FROM people').executeScalar(Integer)
+            } as StatementRunnableWithResult)
+        }
+        started.await()
+
+        when:
+        sql2oHandler.reloadSql2o('people')
+        Sql2o current = sql2oHandler.withSql2o('people') { String datasourceName, Sql2o sql2o -> sql2o }
+        release.countDown()
+
+        then:
+        !current.is(previous)
+        running.get() == 0
+        sql2oHandler.withSql2o('people') { String datasourceName, Sql2o sql2o -> sql2o }.is(current)
+    }
+
+    void 'Shutdown waits for running callbacks before closing every datasource'() {
+        given:
+        TestEventHandler testEventHandler = new TestEventHandler()
+        application.eventRouter.subscribe(testEventHandler)
+        sql2oHandler.withSql2o { String datasourceName, Sql2o sql2o -> true }
+        CountDownLatch started = new CountDownLatch(1)
+        CompletableFuture<Integer> running = sql2oHandler.withSql2oAsync('people') { String datasourceName, Sql2o sql2o ->
+            started.countDown()
+            Thread.sleep(200)
+            sql2o.withConnection({ connection, arg ->
+                connection.createQuery('SELECT COUNT(*) FROM people').executeScalar(Integer)
+            } as StatementRunnableWithResult)
+        }
+        started.await()
+
+        when:
+        sql2oHandler.shutdownSql2o(Duration.ofSeconds(10))
+        sql2oHandler.withSql2o('people') { String datasourceName, Sql2o sql2o -> true }
+
+        then:
+        thrown(UnavailableSql2oException)
+        running.get() == 0
+        testEventHandler.events.count { it == 'Sql2oDisconnectStartEvent' } == 2
+        testEventHandler.events.count { it == 'Sql2oDisconnectEndEvent' } == 2
+    }
+
+    void 'Shutdown stops the pool sizing thread started by people'() {
+        given:
+        Set<Thread> before = new HashSet<>(Thread.allStackTraces.keySet())
+        sql2oHandler.withSql2o('people') { String datasourceName, Sql2o sql2o -> true }
+        Thread sizing = Thread.allStackTraces.keySet().find { !before.contains(it) && it.name == 'sql2o-pool-sizing' }
+
+        when:
+        sql2oHandler.shutdownSql2o(Duration.ofSeconds(10))
+        sizing.join(5000)
+
+        then:
+        !sizing.alive
+    }
+
+    void 'Nested callbacks share the transaction on people'() {
+        given:
+        String sql = 'INSERT INTO people(id, name, lastname) VALUES (:id, :name, :lastname)'
+
+        when:
+        int inside = sql2oHandler.withSql2oTransaction('people') { String datasourceName, Connection connection ->
+            connection.createQuery(sql)
+                .addParameter('id', 1).addParameter('name', 'Danno').addParameter('lastname', 'Ferrin')
+                .executeUpdate()
+            assert 1 == sql2oHandler.withSql2oTransaction('people') { String n, Connection c ->
+                c.createQuery('SELECT COUNT(*) FROM people').executeScalar(Integer)
+            }
+            sql2oHandler.withSql2o('people') { String datasourceName2, Sql2o sql2o ->
+                sql2o.withConnection({ c, arg ->
+                    c.createQuery(sql)
+                        .addParameter('id', 2).addParameter('name', 'Andres').addParameter('lastname', 'Almiray')
+                        .executeUpdate()
+                    c.createQuery('SELECT COUNT(*) FROM people').executeScalar(Integer)
+                } as StatementRunnableWithResult)
+            }
+        }
+
+        then:
+        inside == 2
+        2 == countPeople()
+    }
+
+    void 'A nested transaction on people that commits leaves the outer one in charge'() {
+        given:
+        String sql = 'INSERT INTO people(id, name, lastname) VALUES (:id, :name, :lastname)'
+
+        when:
+        sql2oHandler.withSql2oTransaction('people') { String datasourceName, Connection connection ->
+            sql2oHandler.withSql2oTransaction('people') { String n, Connection nested ->
+                nested.createQuery(sql)
+                    .addParameter('id', 1).addParameter('name', 'Danno').addParameter('lastname', 'Ferrin')
+                    .executeUpdate()
+                nested.commit()
+            }
+            connection.createQuery(sql)
+                .addParameter('id', 2).addParameter('name', 'Andres').addParameter('lastname', 'Almiray')
+                .executeUpdate()
+            throw new IllegalStateException('boom')
+        }
+
+        then:
+        thrown(RuntimeSql2oException)
+        0 == countPeople()
+    }
+
+    void 'Failed transaction on people rolls back nested work'() {
+        when:
+        sql2oHandler.withSql2oTransaction('people', java.sql.Connection.TRANSACTION_SERIALIZABLE) { String datasourceName, Connection connection ->
+            sql2oHandler.withSql2o('people') { String datasourceName2, Sql2o sql2o ->
+                sql2o.withConnection({ c, arg ->
+                    c.createQuery('INSERT INTO people(id, name, lastname) VALUES (1, \'Danno\', \'Ferrin\')').executeUpdate()
+                } as StatementRunnable)
+            }
+            throw new IllegalStateException('boom')
+        }
+
+        then:
+        thrown(RuntimeSql2oException)
+        0 == countPeople()
+    }
+
+    void 'Checked exceptions thrown by a transaction on people roll it back'() {
+        when:
+        sql2oHandler.withSql2oTransaction('people') { String datasourceName, Connection connection ->
+            connection.createQuery('INSERT INTO people(id, name, lastname) VALUES (1, \'Danno\', \'Ferrin\')').executeUpdate()
+            throw new IOException('boom')
+        }
+
+        then:
+        RuntimeSql2oException e = thrown(RuntimeSql2oException)
+        e.cause instanceof IOException
+        0 == countPeople()
+    }
+
+    void 'Cached queries inside a transaction on people bypass the cache'() {
+        given:
+        String query = 'SELECT id, name, lastname FROM people ORDER BY id'
+        List<Person> inside = null
+
+        when:
+        sql2oHandler.withSql2oTransaction('people') { String datasourceName, Connection connection ->
+            connection.createQuery('INSERT INTO people(id, name, lastname) VALUES (1, \'Danno\', \'Ferrin\')').executeUpdate()
+            inside = sql2oHandler.withCachedQuery('people', query, [:], Person, Duration.ofMinutes(1))
+            throw new IllegalStateException('boom')
+        }
+
+        then:
+        thrown(RuntimeSql2oException)
+        inside*.name == ['Danno']
+        sql2oHandler.withCachedQuery('people', query, [:], Person, Duration.ofMinutes(1)).empty
+    }
+
+    private int countPeople() {
+        sql2oHandler.withSql2o('people') { String datasourceName, Sql2o sql2o ->
+            sql2o.withConnection({ connection, arg ->
+                connection.createQuery('SELECT COUNT(*) FROM people').executeScalar(Integer)
+            } as StatementRunnableWithResult)
+        }
+    }
+
+    private int countBatchItems() {
+        sql2oHandler.withSql2o('internal') { String datasourceName, Sql2o sql2o ->
+            sql2o.withConnection({ connection, arg ->
+                connection.createQuery('SELECT COUNT(*) FROM batch_items').executeScalar(Integer)
+            } as StatementRunnableWithResult)
+        }
+    }
+
+    private static boolean isVirtual(Thread thread) {
+        thread.metaClass.respondsTo(thread, 'isVirtual') && thread.isVirtual()
+    }
+
+    private static int javaFeatureVersion() {
+        Integer.parseInt(System.getProperty('java.specification.version').replaceFirst('^1\\.', ''))
+    }
+
     @BindTo(Sql2oBootstrap)
     private TestSql2oBootstrap bootstrap = new TestSql2oBootstrap()
 
+    private class SlowQueryEventHandler {
+        final CountDownLatch latch = new CountDownLatch(1)
+        Sql2oSlowQueryEvent event
+
+        @EventHandler
+        void handleSql2oSlowQueryEvent(Sql2oSlowQueryEvent event) {
+            // creating the alias may be slow too, only the sleeping call matters
+            if (event.sql.startsWith('CALL')) {
+                this.event = event
+                latch.countDown()
+            }
+        }
+    }
+
+    private class CircuitOpenEventHandler {
+        final CountDownLatch latch = new CountDownLatch(1)
+        Sql2oCircuitOpenEvent event
+
+        @EventHandler
+        void handleSql2oCircuitOpenEvent(Sql2oCircuitOpenEvent event) {
+            this.event = event
+            latch.countDown()
+        }
+    }
+
+    private static class CountingPersonRowMapper extends AbstractSql2oRowMapper<Person> {
+        final AtomicInteger rows = new AtomicInteger()
+
+        CountingPersonRowMapper() {
+            super(Person, 'id', 'name', 'lastname')
+        }
+
+        @Override
+        Person map(ResultSet resultSet, int[] columns, Quirks quirks) throws SQLException {
+            rows.incrementAndGet()
+            Person person = new Person()
+            if (columns[0]) person.id = getLong(resultSet, columns[0])
+            if (columns[1]) person.name = getString(resultSet, columns[1])
+            if (columns[2]) person.lastname = getString(resultSet, columns[2])
+            person
+        }
+    }
+
     private class TestEventHandler {
-        List<String> events = []
+        List<String> events = Collections.synchronizedList([])
 
         @EventHandler
         void handleDataSourceConnectStartEvent(DataSourceConnectStartEvent event) {
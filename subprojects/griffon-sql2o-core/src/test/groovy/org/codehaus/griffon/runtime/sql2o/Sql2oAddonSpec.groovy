@@ -0,0 +1,140 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.sql2o
+
+import griffon.core.GriffonApplication
+import griffon.core.events.StartupStartEvent
+import griffon.plugins.sql2o.Sql2oFactory
+import griffon.plugins.sql2o.Sql2oCallback
+import griffon.plugins.sql2o.Sql2oHandler
+import org.sql2o.Sql2o
+import org.sql2o.connectionsources.ConnectionSource
+import spock.lang.Specification
+
+import java.lang.reflect.InvocationHandler
+import java.lang.reflect.Proxy
+import java.sql.Connection
+import java.time.Duration
+import java.util.concurrent.CompletableFuture
+
+class Sql2oAddonSpec extends Specification {
+    private final Sql2oFactory sql2oFactory = Stub(Sql2oFactory)
+    private final Sql2oHandler sql2oHandler = Mock(Sql2oHandler)
+    private final Sql2oAddon addon = new Sql2oAddon()
+
+    void setup() {
+        addon.sql2oFactory = sql2oFactory
+        addon.sql2oHandler = sql2oHandler
+    }
+
+    void 'Startup fills the pool and prepares registered statements on every pooled connection'() {
+        given:
+        sql2oFactory.datasourceNames >> (['warm'] as Set)
+        sql2oFactory.getConfigurationFor('warm') >> [
+            connect_on_startup: true,
+            pool              : [minimumIdle: 3],
+            warmup            : [
+                queries   : ['SELECT X FROM SYSTEM_RANGE(1, 10)'],
+                statements: ['SELECT VALUE FROM INFORMATION_SCHEMA.SETTINGS WHERE NAME = :name']
+            ]
+        ]
+        int opened = 0
+        List<String> prepared = []
+        Sql2o sql2o = new Sql2o('jdbc:h2:mem:sql2o-addon-warm', 'sa', '')
+        ConnectionSource source = sql2o.connectionSource
+        sql2o.connectionSource = {
+            opened++
+            Connection connection = source.connection
+            Proxy.newProxyInstance(Connection.classLoader, [Connection] as Class[], { proxy, method, args ->
+                if (method.name == 'prepareStatement') {
+                    prepared << (String) args[0]
+                }
+                method.invoke(connection, args)
+            } as InvocationHandler) as Connection
+        } as ConnectionSource
+
+        when:
+        addon.handleStartupStartEvent(StartupStartEvent.of(Stub(GriffonApplication)))
+
+        then:
+        1 * sql2oHandler.withAllSql2o(['warm'], _ as Duration, _ as Sql2oCallback) >> { names, timeout, Sql2oCallback callback ->
+            [warm: callback.handle('warm', sql2o)]
+        }
+        opened == 4
+        prepared.count('SELECT VALUE FROM INFORMATION_SCHEMA.SETTINGS WHERE NAME = ?') == 3
+        prepared.count('SELECT X FROM SYSTEM_RANGE(1, 10)') == 1
+    }
+
+    void 'A warm-up timeout of zero is rejected'() {
+        given:
+        sql2oFactory.datasourceNames >> (['warm'] as Set)
+        sql2oFactory.getConfigurationFor('warm') >> [connect_on_startup: true, warmup: [timeoutMs: 0]]
+
+        when:
+        addon.handleStartupStartEvent(StartupStartEvent.of(Stub(GriffonApplication)))
+
+        then:
+        IllegalArgumentException e = thrown(IllegalArgumentException)
+        e.message == "Invalid warmup.timeoutMs 0 for datasource 'warm'. It must be greater than zero"
+        0 * sql2oHandler._
+    }
+
+    void 'Background datasources are connected asynchronously without blocking startup'() {
+        given:
+        sql2oFactory.datasourceNames >> (['people'] as Set)
+        sql2oFactory.getConfigurationFor('people') >> [connect_on_startup: 'background']
+        CompletableFuture<Void> pending = new CompletableFuture<>()
+
+        when:
+        addon.handleStartupStartEvent(StartupStartEvent.of(Stub(GriffonApplication)))
+
+        then:
+        1 * sql2oHandler.withSql2oAsync('people', _) >> pending
+        0 * sql2oHandler.withAllSql2o(*_)
+        !pending.done
+    }
+
+    void 'A failed background connection does not fail startup'() {
+        given:
+        sql2oFactory.datasourceNames >> (['people'] as Set)
+        sql2oFactory.getConfigurationFor('people') >> [connect_on_startup: 'background']
+        CompletableFuture<Void> failed = new CompletableFuture<>()
+        failed.completeExceptionally(new IllegalStateException('boom'))
+
+        when:
+        addon.handleStartupStartEvent(StartupStartEvent.of(Stub(GriffonApplication)))
+
+        then:
+        1 * sql2oHandler.withSql2oAsync('people', _) >> failed
+        noExceptionThrown()
+    }
+
+    void 'Unknown connect_on_startup values are rejected'() {
+        given:
+        sql2oFactory.datasourceNames >> (['people'] as Set)
+        sql2oFactory.getConfigurationFor('people') >> [connect_on_startup: 'lazily']
+
+        when:
+        addon.handleStartupStartEvent(StartupStartEvent.of(Stub(GriffonApplication)))
+
+        then:
+        IllegalArgumentException e = thrown(IllegalArgumentException)
+        e.message == "Invalid connect_on_startup 'lazily' for datasource 'people'. Valid values are [true, false, background]"
+        0 * sql2oHandler._
+    }
+}
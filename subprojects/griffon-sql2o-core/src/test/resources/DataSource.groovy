@@ -54,6 +54,35 @@ dataSources {
         password = ''
         schema = false
         url = 'jdbc:h2:mem:${application_name}-internal'
+        slowQueryThresholdMs = 20
+        retry {
+            maxAttempts = 3
+            initialBackoffMs = 5
+        }
+        circuitBreaker {
+            failureThreshold = 2
+            openMs = 60000
+        }
+    }
+    virtual {
+        driverClassName = 'org.h2.Driver'
+        username = 'sa'
+        password = ''
+        schema = false
+        url = 'jdbc:h2:mem:${application_name}-virtual'
+        executor = 'virtual'
+        pool {
+            maximumPoolSize = 2
+            minimumIdle = 1
+        }
+    }
+    bogusExecutor {
+        driverClassName = 'org.h2.Driver'
+        username = 'sa'
+        password = ''
+        schema = false
+        url = 'jdbc:h2:mem:${application_name}-bogus-executor'
+        executor = 'carrier'
     }
     people {
         driverClassName = 'org.h2.Driver'
@@ -61,5 +90,48 @@ dataSources {
         password = ''
         dbCreate = 'create'
         url = 'jdbc:h2:mem:${application_name}-people'
+        rowMappers = true
+        statementCache {
+            size = 16
+        }
+        bulkLoad {
+            rowsPerStatement = 3
+        }
+        adaptivePool {
+            minimumPoolSize = 2
+            maximumPoolSize = 12
+            intervalMs = 3600000
+        }
+    }
+    reports {
+        driverClassName = 'org.h2.Driver'
+        username = 'sa'
+        password = ''
+        schema = false
+        url = 'jdbc:h2:mem:${application_name}-reports'
+        replicas = ['reportsReplica1', 'reportsReplica2']
+        readYourWritesMs = 60000
     }
-}
\ No newline at end of file
+    reportsReplica1 {
+        driverClassName = 'org.h2.Driver'
+        username = 'sa'
+        password = ''
+        schema = false
+        url = 'jdbc:h2:mem:${application_name}-reports-replica1'
+        bulkhead {
+            maxConcurrent = 1
+            maxWaitMs = 50
+        }
+    }
+    reportsReplica2 {
+        driverClassName = 'org.h2.Driver'
+        username = 'sa'
+        password = ''
+        schema = false
+        url = 'jdbc:h2:mem:${application_name}-reports-replica2'
+        circuitBreaker {
+            failureThreshold = 2
+            openMs = 60000
+        }
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package griffon.transform.sql2o;
+
+import org.codehaus.groovy.transform.GroovyASTTransformationClass;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * <p>Annotates a method whose body runs the given query. Named parameters are matched with the method's arguments
+ * and turned into positional ones at compile time, a parameter without a matching argument (or the other way
+ * around) fails compilation. Methods returning a {@code List<T>} get every row mapped to {@code T}, any other
+ * return type gets the first row or {@code null}.</p>
+ * <p>The declaring class must be annotated with {@code @Sql2oAware} or implement {@code Sql2oHandler}, and the
+ * annotated method must have an empty body.</p>
+ *
+ * @author Andres Almiray
+ * @see griffon.plugins.sql2o.Sql2oPreparedQuery
+ * @since 3.0.0
+ */
+@Documented
+@Retention(RetentionPolicy.SOURCE)
+@Target({ElementType.METHOD})
+@GroovyASTTransformationClass("org.codehaus.griffon.compile.sql2o.ast.transform.Sql2oQueryASTTransformation")
+public @interface Sql2oQuery {
+    /**
+     * The SQL to run, with named parameters such as {@code :id}.
+     */
+    String value();
+
+    /**
+     * The name of the datasource to run the query on.
+     */
+    String datasource() default "default";
+}
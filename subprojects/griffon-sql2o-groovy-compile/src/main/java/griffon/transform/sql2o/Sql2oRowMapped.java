@@ -0,0 +1,44 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package griffon.transform.sql2o;
+
+import org.codehaus.groovy.transform.GroovyASTTransformationClass;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * <p>Generates a statically compiled {@code Sql2oRowMapper} for the annotated class, as a nested class named
+ * {@code Sql2oRowMapper}. Rows are then mapped by calling setters directly instead of going through Sql2o's
+ * reflective property lookup, wherever the datasource has row mappers enabled.</p>
+ * <p>Properties, public setters and non-final fields of the annotated class are mapped, as well as public setters
+ * and public fields of its superclasses. The class must be concrete and have a no-args constructor.</p>
+ *
+ * @author Andres Almiray
+ * @see griffon.plugins.sql2o.Sql2oRowMappers
+ * @since 3.0.0
+ */
+@Documented
+@Retention(RetentionPolicy.SOURCE)
+@Target({ElementType.TYPE})
+@GroovyASTTransformationClass("org.codehaus.griffon.compile.sql2o.ast.transform.Sql2oRowMappedASTTransformation")
+public @interface Sql2oRowMapped {
+}
@@ -0,0 +1,105 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.compile.sql2o;
+
+import griffon.annotations.core.Nonnull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Splits SQL with named parameters into JDBC SQL and the parameter name bound at each {@code ?}, following the
+ * same rules as Sql2o's default parsing strategy: parameters inside quotes or comments are left alone, and
+ * {@code ::} (a PostgreSQL cast) does not start a parameter.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public final class NamedParameterSql {
+    private final String sql;
+    private final List<String> parameterNames;
+
+    private NamedParameterSql(@Nonnull String sql, @Nonnull List<String> parameterNames) {
+        this.sql = sql;
+        this.parameterNames = Collections.unmodifiableList(parameterNames);
+    }
+
+    /**
+     * @return the SQL with every named parameter replaced by {@code ?}
+     */
+    @Nonnull
+    public String getSql() {
+        return sql;
+    }
+
+    /**
+     * @return the name of the parameter bound at each {@code ?}, in order; a name used twice appears twice
+     */
+    @Nonnull
+    public List<String> getParameterNames() {
+        return parameterNames;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the SQL contains positional {@code ?} parameters
+     */
+    @Nonnull
+    public static NamedParameterSql parse(@Nonnull String statement) {
+        StringBuilder sql = new StringBuilder(statement.length());
+        List<String> names = new ArrayList<>();
+        int length = statement.length();
+        int i = 0;
+        while (i < length) {
+            char c = statement.charAt(i);
+            if (c == '\'' || c == '"') {
+                int end = statement.indexOf(c, i + 1);
+                end = end < 0 ? length : end + 1;
+                sql.append(statement, i, end);
+                i = end;
+            } else if (c == '-' && i + 1 < length && statement.charAt(i + 1) == '-') {
+                int end = statement.indexOf('\n', i);
+                end = end < 0 ? length : end;
+                sql.append(statement, i, end);
+                i = end;
+            } else if (c == '/' && i + 1 < length && statement.charAt(i + 1) == '*') {
+                int end = statement.indexOf("*/", i + 2);
+                end = end < 0 ? length : end + 2;
+                sql.append(statement, i, end);
+                i = end;
+            } else if (c == ':' && i + 1 < length && statement.charAt(i + 1) == ':') {
+                sql.append("::");
+                i += 2;
+            } else if (c == ':' && i + 1 < length && Character.isJavaIdentifierStart(statement.charAt(i + 1))) {
+                int end = i + 2;
+                while (end < length && Character.isJavaIdentifierPart(statement.charAt(end))) {
+                    end++;
+                }
+                names.add(statement.substring(i + 1, end));
+                sql.append('?');
+                i = end;
+            } else if (c == '?') {
+                throw new IllegalArgumentException("Positional parameter '?' at index " + i + " is not supported, use a named parameter instead");
+            } else {
+                sql.append(c);
+                i++;
+            }
+        }
+        return new NamedParameterSql(sql.toString(), names);
+    }
+}
@@ -36,12 +36,38 @@ import static org.codehaus.griffon.compile.core.MethodDescriptor.types;
 public interface Sql2oAwareConstants extends BaseConstants {
     String SQL2O_HANDLER_TYPE = "griffon.plugins.sql2o.Sql2oHandler";
     String SQL2O_CALLBACK_TYPE = "griffon.plugins.sql2o.Sql2oCallback";
+    String SQL2O_TRANSACTION_CALLBACK_TYPE = "griffon.plugins.sql2o.Sql2oTransactionCallback";
+    String SQL2O_COLUMNS_TYPE = "griffon.plugins.sql2o.Sql2oColumns";
     String RUNTIME_SQL2O_EXCEPTION_TYPE = "griffon.plugins.sql2o.exceptions.RuntimeSql2oException";
     String SQL2O_HANDLER_PROPERTY = "sql2oHandler";
     String SQL2O_HANDLER_FIELD_NAME = "this$" + SQL2O_HANDLER_PROPERTY;
+    String JAVA_UTIL_CONCURRENT_COMPLETABLE_FUTURE = "java.util.concurrent.CompletableFuture";
+    String JAVA_LANG_ITERABLE = "java.lang.Iterable";
+    String JAVA_UTIL_STREAM_STREAM = "java.util.stream.Stream";
+    String JAVA_LANG_CLASS = "java.lang.Class";
+    String JAVA_UTIL_MAP = "java.util.Map";
+    String JAVA_UTIL_LIST = "java.util.List";
+    String JAVA_UTIL_COLLECTION = "java.util.Collection";
+    String JAVA_TIME_DURATION = "java.time.Duration";
+    String WILDCARD = "?";
+    String T = "T";
+    String LONG = "long";
+    String INT = "int";
 
     String METHOD_WITH_SQL2O = "withSql2o";
+    String METHOD_WITH_SQL2O_READ_ONLY = "withSql2oReadOnly";
+    String METHOD_WITH_SQL2O_TRANSACTION = "withSql2oTransaction";
+    String METHOD_WITH_SQL2O_ASYNC = "withSql2oAsync";
+    String METHOD_WITH_ALL_SQL2O = "withAllSql2o";
+    String METHOD_WITH_SQL2O_BATCH = "withSql2oBatch";
+    String METHOD_STREAM_SQL2O = "streamSql2o";
+    String METHOD_FETCH_COLUMNS = "fetchColumns";
+    String METHOD_BULK_LOAD = "bulkLoad";
+    String METHOD_WITH_CACHED_QUERY = "withCachedQuery";
+    String METHOD_INVALIDATE_CACHED_QUERIES = "invalidateCachedQueries";
     String METHOD_CLOSE_SQL2O = "closeSql2o";
+    String METHOD_RELOAD_SQL2O = "reloadSql2o";
+    String METHOD_SHUTDOWN_SQL2O = "shutdownSql2o";
     String DATASOURCE_NAME = "datasourceName";
     String CALLBACK = "callback";
 
@@ -55,6 +81,20 @@ public interface Sql2oAwareConstants extends BaseConstants {
             METHOD_CLOSE_SQL2O,
             args(annotatedType(types(type(ANNOTATION_NONNULL)), JAVA_LANG_STRING))
         ),
+        method(
+            type(VOID),
+            METHOD_RELOAD_SQL2O
+        ),
+        method(
+            type(VOID),
+            METHOD_RELOAD_SQL2O,
+            args(annotatedType(types(type(ANNOTATION_NONNULL)), JAVA_LANG_STRING))
+        ),
+        method(
+            type(VOID),
+            METHOD_SHUTDOWN_SQL2O,
+            args(annotatedType(types(type(ANNOTATION_NONNULL)), JAVA_TIME_DURATION))
+        ),
 
         annotatedMethod(
             annotations(ANNOTATION_NONNULL),
@@ -73,6 +113,240 @@ public interface Sql2oAwareConstants extends BaseConstants {
                 annotatedType(annotations(ANNOTATION_NONNULL), JAVA_LANG_STRING),
                 annotatedType(annotations(ANNOTATION_NONNULL), SQL2O_CALLBACK_TYPE, R)),
             throwing(type(RUNTIME_SQL2O_EXCEPTION_TYPE))
+        ),
+
+        annotatedMethod(
+            annotations(ANNOTATION_NONNULL),
+            type(R),
+            typeParams(R),
+            METHOD_WITH_SQL2O_READ_ONLY,
+            args(annotatedType(annotations(ANNOTATION_NONNULL), SQL2O_CALLBACK_TYPE, R)),
+            throwing(type(RUNTIME_SQL2O_EXCEPTION_TYPE))
+        ),
+        annotatedMethod(
+            types(type(ANNOTATION_NONNULL)),
+            type(R),
+            typeParams(R),
+            METHOD_WITH_SQL2O_READ_ONLY,
+            args(
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_LANG_STRING),
+                annotatedType(annotations(ANNOTATION_NONNULL), SQL2O_CALLBACK_TYPE, R)),
+            throwing(type(RUNTIME_SQL2O_EXCEPTION_TYPE))
+        ),
+
+        annotatedMethod(
+            annotations(ANNOTATION_NONNULL),
+            type(R),
+            typeParams(R),
+            METHOD_WITH_SQL2O_TRANSACTION,
+            args(annotatedType(annotations(ANNOTATION_NONNULL), SQL2O_TRANSACTION_CALLBACK_TYPE, R)),
+            throwing(type(RUNTIME_SQL2O_EXCEPTION_TYPE))
+        ),
+        annotatedMethod(
+            types(type(ANNOTATION_NONNULL)),
+            type(R),
+            typeParams(R),
+            METHOD_WITH_SQL2O_TRANSACTION,
+            args(
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_LANG_STRING),
+                annotatedType(annotations(ANNOTATION_NONNULL), SQL2O_TRANSACTION_CALLBACK_TYPE, R)),
+            throwing(type(RUNTIME_SQL2O_EXCEPTION_TYPE))
+        ),
+        annotatedMethod(
+            types(type(ANNOTATION_NONNULL)),
+            type(R),
+            typeParams(R),
+            METHOD_WITH_SQL2O_TRANSACTION,
+            args(
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_LANG_STRING),
+                type(INT),
+                annotatedType(annotations(ANNOTATION_NONNULL), SQL2O_TRANSACTION_CALLBACK_TYPE, R)),
+            throwing(type(RUNTIME_SQL2O_EXCEPTION_TYPE))
+        ),
+
+        annotatedMethod(
+            annotations(ANNOTATION_NONNULL),
+            type(JAVA_UTIL_CONCURRENT_COMPLETABLE_FUTURE, R),
+            typeParams(R),
+            METHOD_WITH_SQL2O_ASYNC,
+            args(annotatedType(annotations(ANNOTATION_NONNULL), SQL2O_CALLBACK_TYPE, R))
+        ),
+        annotatedMethod(
+            annotations(ANNOTATION_NONNULL),
+            type(JAVA_UTIL_CONCURRENT_COMPLETABLE_FUTURE, R),
+            typeParams(R),
+            METHOD_WITH_SQL2O_ASYNC,
+            args(
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_LANG_STRING),
+                annotatedType(annotations(ANNOTATION_NONNULL), SQL2O_CALLBACK_TYPE, R))
+        ),
+
+        annotatedMethod(
+            annotations(ANNOTATION_NONNULL),
+            type(JAVA_UTIL_MAP, JAVA_LANG_STRING, R),
+            typeParams(R),
+            METHOD_WITH_ALL_SQL2O,
+            args(
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_UTIL_COLLECTION, JAVA_LANG_STRING),
+                annotatedType(annotations(ANNOTATION_NONNULL), SQL2O_CALLBACK_TYPE, R)),
+            throwing(type(RUNTIME_SQL2O_EXCEPTION_TYPE))
+        ),
+        annotatedMethod(
+            annotations(ANNOTATION_NONNULL),
+            type(JAVA_UTIL_MAP, JAVA_LANG_STRING, R),
+            typeParams(R),
+            METHOD_WITH_ALL_SQL2O,
+            args(
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_UTIL_COLLECTION, JAVA_LANG_STRING),
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_TIME_DURATION),
+                annotatedType(annotations(ANNOTATION_NONNULL), SQL2O_CALLBACK_TYPE, R)),
+            throwing(type(RUNTIME_SQL2O_EXCEPTION_TYPE))
+        ),
+
+        method(
+            type(LONG),
+            typeParams(T),
+            METHOD_WITH_SQL2O_BATCH,
+            args(
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_LANG_STRING),
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_LANG_ITERABLE, T),
+                type(INT)),
+            throwing(type(RUNTIME_SQL2O_EXCEPTION_TYPE))
+        ),
+        method(
+            type(LONG),
+            typeParams(T),
+            METHOD_WITH_SQL2O_BATCH,
+            args(
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_LANG_STRING),
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_LANG_STRING),
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_LANG_ITERABLE, T),
+                type(INT)),
+            throwing(type(RUNTIME_SQL2O_EXCEPTION_TYPE))
+        ),
+        method(
+            type(LONG),
+            typeParams(T),
+            METHOD_WITH_SQL2O_BATCH,
+            args(
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_LANG_STRING),
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_UTIL_STREAM_STREAM, T),
+                type(INT)),
+            throwing(type(RUNTIME_SQL2O_EXCEPTION_TYPE))
+        ),
+        method(
+            type(LONG),
+            typeParams(T),
+            METHOD_WITH_SQL2O_BATCH,
+            args(
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_LANG_STRING),
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_LANG_STRING),
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_UTIL_STREAM_STREAM, T),
+                type(INT)),
+            throwing(type(RUNTIME_SQL2O_EXCEPTION_TYPE))
+        ),
+
+        annotatedMethod(
+            annotations(ANNOTATION_NONNULL),
+            type(JAVA_UTIL_STREAM_STREAM, T),
+            typeParams(T),
+            METHOD_STREAM_SQL2O,
+            args(
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_LANG_STRING),
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_UTIL_MAP, JAVA_LANG_STRING, WILDCARD),
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_LANG_CLASS, T)),
+            throwing(type(RUNTIME_SQL2O_EXCEPTION_TYPE))
+        ),
+        annotatedMethod(
+            annotations(ANNOTATION_NONNULL),
+            type(JAVA_UTIL_STREAM_STREAM, T),
+            typeParams(T),
+            METHOD_STREAM_SQL2O,
+            args(
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_LANG_STRING),
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_LANG_STRING),
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_UTIL_MAP, JAVA_LANG_STRING, WILDCARD),
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_LANG_CLASS, T)),
+            throwing(type(RUNTIME_SQL2O_EXCEPTION_TYPE))
+        ),
+
+        annotatedMethod(
+            annotations(ANNOTATION_NONNULL),
+            type(SQL2O_COLUMNS_TYPE),
+            METHOD_FETCH_COLUMNS,
+            args(
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_LANG_STRING),
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_UTIL_MAP, JAVA_LANG_STRING, WILDCARD)),
+            throwing(type(RUNTIME_SQL2O_EXCEPTION_TYPE))
+        ),
+        annotatedMethod(
+            annotations(ANNOTATION_NONNULL),
+            type(SQL2O_COLUMNS_TYPE),
+            METHOD_FETCH_COLUMNS,
+            args(
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_LANG_STRING),
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_LANG_STRING),
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_UTIL_MAP, JAVA_LANG_STRING, WILDCARD)),
+            throwing(type(RUNTIME_SQL2O_EXCEPTION_TYPE))
+        ),
+
+        method(
+            type(LONG),
+            METHOD_BULK_LOAD,
+            args(
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_LANG_STRING),
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_UTIL_LIST, JAVA_LANG_STRING),
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_UTIL_STREAM_STREAM, type(JAVA_LANG_OBJECT, 1))),
+            throwing(type(RUNTIME_SQL2O_EXCEPTION_TYPE))
+        ),
+        method(
+            type(LONG),
+            METHOD_BULK_LOAD,
+            args(
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_LANG_STRING),
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_LANG_STRING),
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_UTIL_LIST, JAVA_LANG_STRING),
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_UTIL_STREAM_STREAM, type(JAVA_LANG_OBJECT, 1))),
+            throwing(type(RUNTIME_SQL2O_EXCEPTION_TYPE))
+        ),
+
+        annotatedMethod(
+            annotations(ANNOTATION_NONNULL),
+            type(JAVA_UTIL_LIST, T),
+            typeParams(T),
+            METHOD_WITH_CACHED_QUERY,
+            args(
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_LANG_STRING),
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_UTIL_MAP, JAVA_LANG_STRING, WILDCARD),
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_LANG_CLASS, T),
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_TIME_DURATION)),
+            throwing(type(RUNTIME_SQL2O_EXCEPTION_TYPE))
+        ),
+        annotatedMethod(
+            annotations(ANNOTATION_NONNULL),
+            type(JAVA_UTIL_LIST, T),
+            typeParams(T),
+            METHOD_WITH_CACHED_QUERY,
+            args(
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_LANG_STRING),
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_LANG_STRING),
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_UTIL_MAP, JAVA_LANG_STRING, WILDCARD),
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_LANG_CLASS, T),
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_TIME_DURATION)),
+            throwing(type(RUNTIME_SQL2O_EXCEPTION_TYPE))
+        ),
+
+        method(
+            type(VOID),
+            METHOD_INVALIDATE_CACHED_QUERIES,
+            args(annotatedType(annotations(ANNOTATION_NONNULL), JAVA_LANG_STRING))
+        ),
+        method(
+            type(VOID),
+            METHOD_INVALIDATE_CACHED_QUERIES,
+            args(
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_LANG_STRING),
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_LANG_STRING))
         )
     };
 }
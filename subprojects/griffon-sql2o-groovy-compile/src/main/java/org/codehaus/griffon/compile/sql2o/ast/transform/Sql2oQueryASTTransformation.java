@@ -0,0 +1,209 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.compile.sql2o.ast.transform;
+
+import griffon.annotations.core.Nonnull;
+import griffon.plugins.sql2o.Sql2oHandler;
+import griffon.plugins.sql2o.Sql2oPreparedQuery;
+import griffon.transform.sql2o.Sql2oQuery;
+import org.codehaus.griffon.compile.core.ast.transform.AbstractASTTransformation;
+import org.codehaus.griffon.compile.sql2o.NamedParameterSql;
+import org.codehaus.groovy.ast.ASTNode;
+import org.codehaus.groovy.ast.AnnotationNode;
+import org.codehaus.groovy.ast.ClassHelper;
+import org.codehaus.groovy.ast.ClassNode;
+import org.codehaus.groovy.ast.FieldNode;
+import org.codehaus.groovy.ast.GenericsType;
+import org.codehaus.groovy.ast.MethodNode;
+import org.codehaus.groovy.ast.Parameter;
+import org.codehaus.groovy.ast.expr.ArrayExpression;
+import org.codehaus.groovy.ast.expr.ConstantExpression;
+import org.codehaus.groovy.ast.expr.Expression;
+import org.codehaus.groovy.ast.stmt.BlockStatement;
+import org.codehaus.groovy.ast.stmt.Statement;
+import org.codehaus.groovy.control.CompilePhase;
+import org.codehaus.groovy.control.SourceUnit;
+import org.codehaus.groovy.control.messages.SyntaxErrorMessage;
+import org.codehaus.groovy.syntax.SyntaxException;
+import org.codehaus.groovy.transform.GroovyASTTransformation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.codehaus.groovy.ast.tools.GeneralUtils.args;
+import static org.codehaus.groovy.ast.tools.GeneralUtils.callX;
+import static org.codehaus.groovy.ast.tools.GeneralUtils.castX;
+import static org.codehaus.groovy.ast.tools.GeneralUtils.classX;
+import static org.codehaus.groovy.ast.tools.GeneralUtils.constX;
+import static org.codehaus.groovy.ast.tools.GeneralUtils.ctorX;
+import static org.codehaus.groovy.ast.tools.GeneralUtils.fieldX;
+import static org.codehaus.groovy.ast.tools.GeneralUtils.returnS;
+import static org.codehaus.groovy.ast.tools.GeneralUtils.varX;
+
+/**
+ * Handles generation of code for the {@code @Sql2oQuery} annotation. The SQL is parsed once, at compile time, into
+ * a {@code Sql2oPreparedQuery} held by a static field, and the method body becomes a call that passes the method's
+ * arguments in the order their parameters appear in the SQL.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+@GroovyASTTransformation(phase = CompilePhase.CANONICALIZATION)
+public class Sql2oQueryASTTransformation extends AbstractASTTransformation {
+    private static final Logger LOG = LoggerFactory.getLogger(Sql2oQueryASTTransformation.class);
+    private static final ClassNode SQL2O_HANDLER_CNODE = makeClassSafe(Sql2oHandler.class);
+    private static final ClassNode SQL2O_QUERY_CNODE = makeClassSafe(Sql2oQuery.class);
+    private static final ClassNode SQL2O_PREPARED_QUERY_CNODE = makeClassSafe(Sql2oPreparedQuery.class);
+    private static final String FIELD_PREFIX = "$sql2oQuery$";
+
+    public void visit(ASTNode[] nodes, SourceUnit source) {
+        if (nodes.length != 2 || !(nodes[0] instanceof AnnotationNode) || !(nodes[1] instanceof MethodNode) ||
+            !SQL2O_QUERY_CNODE.equals(((AnnotationNode) nodes[0]).getClassNode())) {
+            throw new IllegalArgumentException("Internal error: expecting [AnnotationNode, MethodNode] but got: " + (nodes.length == 2 ? nodes[0] + ", " + nodes[1] : nodes.length + " nodes"));
+        }
+        AnnotationNode annotation = (AnnotationNode) nodes[0];
+        MethodNode method = (MethodNode) nodes[1];
+        ClassNode declaringClass = method.getDeclaringClass();
+
+        String query = stringMember(annotation, "value", null);
+        String datasource = stringMember(annotation, "datasource", "default");
+        if (query == null || query.trim().isEmpty() || datasource == null || datasource.trim().isEmpty()) {
+            addError(source, annotation, "@Sql2oQuery requires a constant, non blank query and datasource");
+            return;
+        }
+        if (!Sql2oAwareASTTransformation.hasSql2oAwareAnnotation(declaringClass) && !declaringClass.implementsInterface(SQL2O_HANDLER_CNODE)) {
+            addError(source, method, "Class " + declaringClass.getName() + " must be annotated with @Sql2oAware or implement Sql2oHandler to use @Sql2oQuery");
+            return;
+        }
+        if (method.isStatic() || method.isAbstract() || !isEmpty(method.getCode())) {
+            addError(source, method, "Method " + method.getName() + " annotated with @Sql2oQuery must be an instance method with an empty body");
+            return;
+        }
+
+        NamedParameterSql namedParameterSql;
+        try {
+            namedParameterSql = NamedParameterSql.parse(query);
+        } catch (IllegalArgumentException e) {
+            addError(source, annotation, e.getMessage());
+            return;
+        }
+
+        List<Expression> arguments = bindArguments(source, method, namedParameterSql.getParameterNames());
+        ClassNode resultType = resultType(source, method);
+        if (arguments == null || resultType == null) {
+            return;
+        }
+
+        ClassNode returnType = method.getReturnType();
+        boolean list = isList(returnType);
+        FieldNode preparedQuery = declaringClass.addField(fieldName(declaringClass, method),
+            Modifier.PRIVATE | Modifier.STATIC | Modifier.FINAL,
+            SQL2O_PREPARED_QUERY_CNODE,
+            ctorX(SQL2O_PREPARED_QUERY_CNODE, args(constX(namedParameterSql.getSql()), new ConstantExpression(arguments.size(), true))));
+
+        Expression call = callX(fieldX(preparedQuery), list ? "fetch" : "fetchFirst", args(
+            castX(SQL2O_HANDLER_CNODE, varX("this")),
+            constX(datasource),
+            new ArrayExpression(ClassHelper.OBJECT_TYPE, arguments),
+            classX(resultType)));
+        method.setCode(new BlockStatement(new Statement[]{returnS(castX(returnType, call))}, method.getVariableScope()));
+        LOG.debug("Generated @Sql2oQuery {}.{} on datasource '{}': {}", declaringClass.getName(), method.getName(), datasource, namedParameterSql.getSql());
+    }
+
+    private static List<Expression> bindArguments(@Nonnull SourceUnit source, @Nonnull MethodNode method, @Nonnull List<String> parameterNames) {
+        Map<String, Parameter> parameters = new LinkedHashMap<>();
+        for (Parameter parameter : method.getParameters()) {
+            parameters.put(parameter.getName(), parameter);
+        }
+
+        boolean valid = true;
+        Set<String> used = new LinkedHashSet<>();
+        List<Expression> arguments = new ArrayList<>();
+        for (String name : parameterNames) {
+            Parameter parameter = parameters.get(name);
+            if (parameter == null) {
+                addError(source, method, "Named parameter ':" + name + "' in @Sql2oQuery of method " + method.getName() + " does not match any of its arguments " + parameters.keySet());
+                valid = false;
+            } else {
+                used.add(name);
+                arguments.add(varX(parameter));
+            }
+        }
+        for (String name : parameters.keySet()) {
+            if (!used.contains(name)) {
+                addError(source, method, "Argument '" + name + "' of method " + method.getName() + " is not used by its @Sql2oQuery");
+                valid = false;
+            }
+        }
+        return valid ? arguments : null;
+    }
+
+    private static ClassNode resultType(@Nonnull SourceUnit source, @Nonnull MethodNode method) {
+        ClassNode returnType = method.getReturnType();
+        ClassNode resultType = returnType;
+        if (isList(returnType)) {
+            GenericsType[] generics = returnType.getGenericsTypes();
+            resultType = generics != null && generics.length == 1 && !generics[0].isPlaceholder() && !generics[0].isWildcard() ? generics[0].getType() : null;
+        }
+        if (resultType == null || ClassHelper.VOID_TYPE.equals(resultType) || ClassHelper.OBJECT_TYPE.equals(resultType) || ClassHelper.DYNAMIC_TYPE.equals(resultType)) {
+            addError(source, method, "Method " + method.getName() + " annotated with @Sql2oQuery must declare a result type, e.g. Person or List<Person>");
+            return null;
+        }
+        return ClassHelper.getWrapper(resultType).getPlainNodeReference();
+    }
+
+    private static boolean isList(@Nonnull ClassNode type) {
+        return ClassHelper.LIST_TYPE.equals(type.redirect());
+    }
+
+    private static boolean isEmpty(Statement code) {
+        return code == null || (code instanceof BlockStatement && ((BlockStatement) code).isEmpty());
+    }
+
+    @Nonnull
+    private static String fieldName(@Nonnull ClassNode declaringClass, @Nonnull MethodNode method) {
+        // overloads share a name, number them
+        int index = 0;
+        while (declaringClass.getDeclaredField(FIELD_PREFIX + method.getName() + "$" + index) != null) {
+            index++;
+        }
+        return FIELD_PREFIX + method.getName() + "$" + index;
+    }
+
+    private static String stringMember(@Nonnull AnnotationNode annotation, @Nonnull String name, String defaultValue) {
+        Expression member = annotation.getMember(name);
+        if (member == null) {
+            return defaultValue;
+        }
+        return member instanceof ConstantExpression && ((ConstantExpression) member).getValue() instanceof String ?
+            (String) ((ConstantExpression) member).getValue() : null;
+    }
+
+    private static void addError(@Nonnull SourceUnit source, @Nonnull ASTNode node, @Nonnull String message) {
+        source.getErrorCollector().addErrorAndContinue(new SyntaxErrorMessage(
+            new SyntaxException(message + '\n', node.getLineNumber(), node.getColumnNumber(), node.getLastLineNumber(), node.getLastColumnNumber()),
+            source));
+    }
+}
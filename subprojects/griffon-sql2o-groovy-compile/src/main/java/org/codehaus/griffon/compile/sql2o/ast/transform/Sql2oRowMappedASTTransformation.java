@@ -0,0 +1,261 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.compile.sql2o.ast.transform;
+
+import griffon.annotations.core.Nonnull;
+import griffon.plugins.sql2o.AbstractSql2oRowMapper;
+import griffon.plugins.sql2o.Sql2oRowMappers;
+import griffon.transform.sql2o.Sql2oRowMapped;
+import groovy.transform.CompileStatic;
+import org.codehaus.griffon.compile.core.ast.transform.AbstractASTTransformation;
+import org.codehaus.groovy.ast.ASTNode;
+import org.codehaus.groovy.ast.AnnotationNode;
+import org.codehaus.groovy.ast.ClassHelper;
+import org.codehaus.groovy.ast.ClassNode;
+import org.codehaus.groovy.ast.ConstructorNode;
+import org.codehaus.groovy.ast.FieldNode;
+import org.codehaus.groovy.ast.GenericsType;
+import org.codehaus.groovy.ast.InnerClassNode;
+import org.codehaus.groovy.ast.MethodNode;
+import org.codehaus.groovy.ast.Parameter;
+import org.codehaus.groovy.ast.PropertyNode;
+import org.codehaus.groovy.ast.expr.Expression;
+import org.codehaus.groovy.ast.expr.VariableExpression;
+import org.codehaus.groovy.ast.stmt.BlockStatement;
+import org.codehaus.groovy.ast.stmt.Statement;
+import org.codehaus.groovy.ast.tools.GenericsUtils;
+import org.codehaus.groovy.control.CompilePhase;
+import org.codehaus.groovy.control.SourceUnit;
+import org.codehaus.groovy.control.messages.SyntaxErrorMessage;
+import org.codehaus.groovy.syntax.SyntaxException;
+import org.codehaus.groovy.transform.GroovyASTTransformation;
+import org.codehaus.groovy.transform.sc.StaticCompileTransformation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sql2o.quirks.Quirks;
+
+import java.lang.reflect.Modifier;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.codehaus.groovy.ast.tools.GeneralUtils.args;
+import static org.codehaus.groovy.ast.tools.GeneralUtils.assignS;
+import static org.codehaus.groovy.ast.tools.GeneralUtils.block;
+import static org.codehaus.groovy.ast.tools.GeneralUtils.callX;
+import static org.codehaus.groovy.ast.tools.GeneralUtils.castX;
+import static org.codehaus.groovy.ast.tools.GeneralUtils.classX;
+import static org.codehaus.groovy.ast.tools.GeneralUtils.constX;
+import static org.codehaus.groovy.ast.tools.GeneralUtils.ctorSuperS;
+import static org.codehaus.groovy.ast.tools.GeneralUtils.ctorX;
+import static org.codehaus.groovy.ast.tools.GeneralUtils.declS;
+import static org.codehaus.groovy.ast.tools.GeneralUtils.ifS;
+import static org.codehaus.groovy.ast.tools.GeneralUtils.indexX;
+import static org.codehaus.groovy.ast.tools.GeneralUtils.neX;
+import static org.codehaus.groovy.ast.tools.GeneralUtils.param;
+import static org.codehaus.groovy.ast.tools.GeneralUtils.params;
+import static org.codehaus.groovy.ast.tools.GeneralUtils.propX;
+import static org.codehaus.groovy.ast.tools.GeneralUtils.returnS;
+import static org.codehaus.groovy.ast.tools.GeneralUtils.stmt;
+import static org.codehaus.groovy.ast.tools.GeneralUtils.varX;
+
+/**
+ * Handles generation of code for the {@code @Sql2oRowMapped} annotation. The generated mapper creates an instance
+ * with the no-args constructor and calls the setter of every property whose column was selected, reading values
+ * with the {@code ResultSet} getter matching the property's type.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+@GroovyASTTransformation(phase = CompilePhase.CANONICALIZATION)
+public class Sql2oRowMappedASTTransformation extends AbstractASTTransformation {
+    private static final Logger LOG = LoggerFactory.getLogger(Sql2oRowMappedASTTransformation.class);
+    private static final ClassNode SQL2O_ROW_MAPPED_CNODE = makeClassSafe(Sql2oRowMapped.class);
+    private static final ClassNode ABSTRACT_SQL2O_ROW_MAPPER_CNODE = makeClassSafe(AbstractSql2oRowMapper.class);
+    private static final ClassNode COMPILE_STATIC_CNODE = makeClassSafe(CompileStatic.class);
+    private static final ClassNode RESULT_SET_CNODE = makeClassSafe(ResultSet.class);
+    private static final ClassNode QUIRKS_CNODE = makeClassSafe(Quirks.class);
+    private static final ClassNode SQL_EXCEPTION_CNODE = makeClassSafe(SQLException.class);
+    private static final Map<ClassNode, String> GETTERS = new HashMap<>();
+
+    static {
+        GETTERS.put(ClassHelper.boolean_TYPE, "getBoolean");
+        GETTERS.put(ClassHelper.byte_TYPE, "getByte");
+        GETTERS.put(ClassHelper.short_TYPE, "getShort");
+        GETTERS.put(ClassHelper.int_TYPE, "getInt");
+        GETTERS.put(ClassHelper.long_TYPE, "getLong");
+        GETTERS.put(ClassHelper.float_TYPE, "getFloat");
+        GETTERS.put(ClassHelper.double_TYPE, "getDouble");
+        GETTERS.put(ClassHelper.STRING_TYPE, "getString");
+    }
+
+    public void visit(ASTNode[] nodes, SourceUnit source) {
+        if (nodes.length != 2 || !(nodes[0] instanceof AnnotationNode) || !(nodes[1] instanceof ClassNode) ||
+            !SQL2O_ROW_MAPPED_CNODE.equals(((AnnotationNode) nodes[0]).getClassNode())) {
+            throw new IllegalArgumentException("Internal error: expecting [AnnotationNode, ClassNode] but got: " + (nodes.length == 2 ? nodes[0] + ", " + nodes[1] : nodes.length + " nodes"));
+        }
+        ClassNode classNode = (ClassNode) nodes[1];
+        if (classNode.isInterface() || classNode.isAbstract() || (classNode instanceof InnerClassNode && !Modifier.isStatic(classNode.getModifiers()))) {
+            addError(source, classNode, "Class " + classNode.getName() + " annotated with @Sql2oRowMapped must be a concrete, top level or static class");
+            return;
+        }
+        if (!hasNoArgsConstructor(classNode)) {
+            addError(source, classNode, "Class " + classNode.getName() + " annotated with @Sql2oRowMapped must have a no-args constructor");
+            return;
+        }
+        String mapperName = classNode.getName() + "$" + Sql2oRowMappers.GENERATED_MAPPER_NAME;
+        for (ClassNode candidate : source.getAST().getClasses()) {
+            if (mapperName.equals(candidate.getName())) {
+                addError(source, classNode, "Class " + classNode.getName() + " annotated with @Sql2oRowMapped already declares a nested " + Sql2oRowMappers.GENERATED_MAPPER_NAME + " class");
+                return;
+            }
+        }
+
+        List<MappedProperty> properties = new ArrayList<>(collectProperties(classNode).values());
+        InnerClassNode mapper = new InnerClassNode(classNode, mapperName, Modifier.PUBLIC | Modifier.STATIC,
+            GenericsUtils.makeClassSafeWithGenerics(ABSTRACT_SQL2O_ROW_MAPPER_CNODE, new GenericsType(classNode.getPlainNodeReference())));
+        mapper.addConstructor(Modifier.PUBLIC, Parameter.EMPTY_ARRAY, ClassNode.EMPTY_ARRAY, ctorSuperS(args(propertyNamesWithType(classNode, properties))));
+        addMapMethod(classNode, mapper, properties);
+
+        // the mapper exists to avoid dynamic dispatch, make sure it gets statically compiled
+        AnnotationNode compileStatic = new AnnotationNode(COMPILE_STATIC_CNODE);
+        mapper.addAnnotation(compileStatic);
+        mapper.addTransform(StaticCompileTransformation.class, compileStatic);
+        source.getAST().addClass(mapper);
+        LOG.debug("Generated {} for properties {}", mapperName, propertyNames(properties));
+    }
+
+    private static void addMapMethod(@Nonnull ClassNode classNode, @Nonnull ClassNode mapper, @Nonnull List<MappedProperty> properties) {
+        Parameter resultSet = param(RESULT_SET_CNODE, "resultSet");
+        Parameter columns = param(ClassHelper.int_TYPE.makeArray(), "columns");
+        Parameter quirks = param(QUIRKS_CNODE, "quirks");
+        VariableExpression target = varX("target", classNode.getPlainNodeReference());
+
+        BlockStatement body = block(declS(target, ctorX(classNode.getPlainNodeReference())));
+        for (int i = 0; i < properties.size(); i++) {
+            MappedProperty property = properties.get(i);
+            Expression column = indexX(varX(columns), constX(i, true));
+            Expression value = readValue(property.type, varX(resultSet), column, varX(quirks));
+            Statement assignment = property.setter != null ? stmt(callX(target, property.setter, value)) : assignS(propX(target, property.name), value);
+            body.addStatement(ifS(neX(column, constX(0, true)), assignment));
+        }
+        body.addStatement(returnS(target));
+
+        mapper.addMethod("map", Modifier.PUBLIC, classNode.getPlainNodeReference(), params(resultSet, columns, quirks),
+            new ClassNode[]{SQL_EXCEPTION_CNODE}, body);
+    }
+
+    @Nonnull
+    private static Expression readValue(@Nonnull ClassNode type, @Nonnull Expression resultSet, @Nonnull Expression column, @Nonnull Expression quirks) {
+        String getter = GETTERS.get(type);
+        if (getter != null) {
+            return callX(ABSTRACT_SQL2O_ROW_MAPPER_CNODE, getter, args(resultSet, column));
+        }
+        // every other type (wrappers included, they may be null) is read the way Sql2o does it
+        ClassNode valueType = ClassHelper.getWrapper(type).getPlainNodeReference();
+        return castX(valueType, callX(ABSTRACT_SQL2O_ROW_MAPPER_CNODE, "getValue", args(resultSet, column, classX(valueType), quirks)));
+    }
+
+    @Nonnull
+    private static Map<String, MappedProperty> collectProperties(@Nonnull ClassNode classNode) {
+        // setters win over properties and fields, subclasses over superclasses; same as Sql2o's PojoMetadata
+        Map<String, MappedProperty> properties = new LinkedHashMap<>();
+        for (ClassNode type = classNode; type != null && !ClassHelper.OBJECT_TYPE.equals(type); type = type.getSuperClass()) {
+            boolean declaring = type == classNode;
+            for (MethodNode method : type.getMethods()) {
+                String name = method.getName();
+                if (name.length() > 3 && name.startsWith("set") && method.getParameters().length == 1 && !method.isStatic() &&
+                    (method.isPublic() || (declaring && !method.isPrivate()))) {
+                    add(properties, Character.toLowerCase(name.charAt(3)) + name.substring(4), method.getParameters()[0].getType(), name);
+                }
+            }
+            for (PropertyNode property : type.getProperties()) {
+                if (!property.isStatic() && !Modifier.isFinal(property.getField().getModifiers())) {
+                    add(properties, property.getName(), property.getType(), null);
+                }
+            }
+            for (FieldNode field : type.getFields()) {
+                if (!field.isStatic() && !field.isFinal() && !field.isSynthetic() && !field.getName().contains("$") &&
+                    (field.isPublic() || (declaring && !field.isPrivate()))) {
+                    add(properties, field.getName(), field.getType(), null);
+                }
+            }
+        }
+        return properties;
+    }
+
+    private static void add(@Nonnull Map<String, MappedProperty> properties, @Nonnull String name, @Nonnull ClassNode type, String setter) {
+        if (!properties.containsKey(name) && !type.isGenericsPlaceHolder()) {
+            properties.put(name, new MappedProperty(name, type, setter));
+        }
+    }
+
+    private static boolean hasNoArgsConstructor(@Nonnull ClassNode classNode) {
+        List<ConstructorNode> constructors = classNode.getDeclaredConstructors();
+        if (constructors.isEmpty()) {
+            return true;
+        }
+        for (ConstructorNode constructor : constructors) {
+            if (constructor.getParameters().length == 0 && !constructor.isPrivate()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Nonnull
+    private static List<Expression> propertyNamesWithType(@Nonnull ClassNode classNode, @Nonnull List<MappedProperty> properties) {
+        List<Expression> arguments = new ArrayList<>();
+        arguments.add(classX(classNode.getPlainNodeReference()));
+        for (MappedProperty property : properties) {
+            arguments.add(constX(property.name));
+        }
+        return arguments;
+    }
+
+    @Nonnull
+    private static List<String> propertyNames(@Nonnull List<MappedProperty> properties) {
+        List<String> names = new ArrayList<>();
+        for (MappedProperty property : properties) {
+            names.add(property.name);
+        }
+        return names;
+    }
+
+    private static void addError(@Nonnull SourceUnit source, @Nonnull ASTNode node, @Nonnull String message) {
+        source.getErrorCollector().addErrorAndContinue(new SyntaxErrorMessage(
+            new SyntaxException(message + '\n', node.getLineNumber(), node.getColumnNumber(), node.getLastLineNumber(), node.getLastColumnNumber()),
+            source));
+    }
+
+    private static final class MappedProperty {
+        private final String name;
+        private final ClassNode type;
+        private final String setter;
+
+        private MappedProperty(@Nonnull String name, @Nonnull ClassNode type, String setter) {
+            this.name = name;
+            this.type = type;
+            this.setter = setter;
+        }
+    }
+}
@@ -18,9 +18,16 @@
 package org.codehaus.griffon.compile.sql2o.ast.transform
 
 import griffon.plugins.sql2o.Sql2oHandler
+import griffon.plugins.sql2o.Sql2oPreparedQuery
+import griffon.plugins.sql2o.Sql2oRowMapper
+import griffon.plugins.sql2o.Sql2oRowMappers
+import org.codehaus.groovy.control.MultipleCompilationErrorsException
+import org.sql2o.quirks.NoQuirks
 import spock.lang.Specification
 
+import java.lang.reflect.Field
 import java.lang.reflect.Method
+import java.sql.ResultSet
 
 /**
  * @author Andres Almiray
@@ -56,10 +63,15 @@ class Sql2oAwareASTTransformationSpec extends Specification {
         when:
         def bean = shell.evaluate('''
         import griffon.plugins.sql2o.Sql2oCallback
+        import griffon.plugins.sql2o.Sql2oColumns
         import griffon.plugins.sql2o.exceptions.RuntimeSql2oException
         import griffon.plugins.sql2o.Sql2oHandler
+        import griffon.plugins.sql2o.Sql2oTransactionCallback
 
         import griffon.annotations.core.Nonnull
+        import java.time.Duration
+        import java.util.concurrent.CompletableFuture
+        import java.util.stream.Stream
 
         @griffon.transform.sql2o.Sql2oAware
         class Sql2oHandlerBean implements Sql2oHandler {
@@ -72,9 +84,103 @@ class Sql2oAwareASTTransformationSpec extends Specification {
                 return null
             }
             @Override
+            public <R> CompletableFuture<R> withSql2oAsync(@Nonnull Sql2oCallback<R> callback) {
+                return null
+            }
+            @Override
+            public <R> CompletableFuture<R> withSql2oAsync(@Nonnull String datasourceName, @Nonnull Sql2oCallback<R> callback) {
+                return null
+            }
+            @Override
+            public <T> long withSql2oBatch(@Nonnull String sql, @Nonnull Iterable<T> items, int batchSize) throws RuntimeSql2oException {
+                return 0L
+            }
+            @Override
+            public <T> long withSql2oBatch(@Nonnull String datasourceName, @Nonnull String sql, @Nonnull Iterable<T> items, int batchSize) throws RuntimeSql2oException {
+                return 0L
+            }
+            @Override
+            public <T> long withSql2oBatch(@Nonnull String sql, @Nonnull Stream<T> items, int batchSize) throws RuntimeSql2oException {
+                return 0L
+            }
+            @Override
+            public <T> long withSql2oBatch(@Nonnull String datasourceName, @Nonnull String sql, @Nonnull Stream<T> items, int batchSize) throws RuntimeSql2oException {
+                return 0L
+            }
+            @Override
+            public <T> Stream<T> streamSql2o(@Nonnull String sql, @Nonnull Map<String, ?> params, @Nonnull Class<T> type) throws RuntimeSql2oException {
+                return null
+            }
+            @Override
+            public <T> Stream<T> streamSql2o(@Nonnull String datasourceName, @Nonnull String sql, @Nonnull Map<String, ?> params, @Nonnull Class<T> type) throws RuntimeSql2oException {
+                return null
+            }
+            @Override
+            public Sql2oColumns fetchColumns(@Nonnull String sql, @Nonnull Map<String, ?> params) throws RuntimeSql2oException {
+                return null
+            }
+            @Override
+            public Sql2oColumns fetchColumns(@Nonnull String datasourceName, @Nonnull String sql, @Nonnull Map<String, ?> params) throws RuntimeSql2oException {
+                return null
+            }
+            @Override
+            public long bulkLoad(@Nonnull String table, @Nonnull List<String> columns, @Nonnull Stream<Object[]> rows) throws RuntimeSql2oException {
+                return 0L
+            }
+            @Override
+            public long bulkLoad(@Nonnull String datasourceName, @Nonnull String table, @Nonnull List<String> columns, @Nonnull Stream<Object[]> rows) throws RuntimeSql2oException {
+                return 0L
+            }
+            @Override
+            public <T> List<T> withCachedQuery(@Nonnull String sql, @Nonnull Map<String, ?> params, @Nonnull Class<T> type, @Nonnull Duration ttl) throws RuntimeSql2oException {
+                return null
+            }
+            @Override
+            public <T> List<T> withCachedQuery(@Nonnull String datasourceName, @Nonnull String sql, @Nonnull Map<String, ?> params, @Nonnull Class<T> type, @Nonnull Duration ttl) throws RuntimeSql2oException {
+                return null
+            }
+            @Override
+            void invalidateCachedQueries(@Nonnull String table){}
+            @Override
+            void invalidateCachedQueries(@Nonnull String datasourceName, @Nonnull String table){}
+            @Override
+            public <R> R withSql2oReadOnly(@Nonnull Sql2oCallback<R> callback) throws RuntimeSql2oException {
+                return null
+            }
+            @Override
+            public <R> R withSql2oReadOnly(@Nonnull String group, @Nonnull Sql2oCallback<R> callback) throws RuntimeSql2oException {
+                return null
+            }
+            @Override
+            public <R> Map<String, R> withAllSql2o(@Nonnull Collection<String> datasourceNames, @Nonnull Sql2oCallback<R> callback) throws RuntimeSql2oException {
+                return null
+            }
+            @Override
+            public <R> Map<String, R> withAllSql2o(@Nonnull Collection<String> datasourceNames, @Nonnull Duration timeout, @Nonnull Sql2oCallback<R> callback) throws RuntimeSql2oException {
+                return null
+            }
+            @Override
+            public <R> R withSql2oTransaction(@Nonnull Sql2oTransactionCallback<R> callback) throws RuntimeSql2oException {
+                return null
+            }
+            @Override
+            public <R> R withSql2oTransaction(@Nonnull String datasourceName, @Nonnull Sql2oTransactionCallback<R> callback) throws RuntimeSql2oException {
+                return null
+            }
+            @Override
+            public <R> R withSql2oTransaction(@Nonnull String datasourceName, int isolationLevel, @Nonnull Sql2oTransactionCallback<R> callback) throws RuntimeSql2oException {
+                return null
+            }
+            @Override
             void closeSql2o(){}
             @Override
             void closeSql2o(@Nonnull String datasourceName){}
+            @Override
+            void reloadSql2o(){}
+            @Override
+            void reloadSql2o(@Nonnull String datasourceName){}
+            @Override
+            void shutdownSql2o(@Nonnull Duration timeout){}
         }
         new Sql2oHandlerBean()
         ''')
@@ -90,4 +196,98 @@ class Sql2oAwareASTTransformationSpec extends Specification {
             }
         }
     }
+
+    def 'Named parameters of @Sql2oQuery are bound by position'() {
+        given:
+        GroovyShell shell = new GroovyShell()
+
+        when:
+        def bean = shell.evaluate('''
+        import griffon.transform.sql2o.Sql2oQuery
+
+        @griffon.transform.sql2o.Sql2oAware
+        class Bean {
+            @Sql2oQuery("SELECT * FROM people WHERE lastname = :lastname AND (id = :id OR parent = :id) AND name <> ':name'")
+            List<Map> findPeople(String lastname, int id) {}
+        }
+        new Bean()
+        ''')
+        Field field = bean.class.getDeclaredField('$sql2oQuery$findPeople$0')
+        field.accessible = true
+        Sql2oPreparedQuery query = field.get(null)
+
+        then:
+        query.sql == "SELECT * FROM people WHERE lastname = ? AND (id = ? OR parent = ?) AND name <> ':name'"
+        query.parameterCount == 3
+    }
+
+    def 'Unknown named parameters of @Sql2oQuery fail compilation'() {
+        given:
+        GroovyShell shell = new GroovyShell()
+
+        when:
+        shell.evaluate('''
+        import griffon.transform.sql2o.Sql2oQuery
+
+        @griffon.transform.sql2o.Sql2oAware
+        class Bean {
+            @Sql2oQuery("SELECT * FROM people WHERE lastname = :lastnme")
+            List<Map> findPeople(String lastname) {}
+        }
+        new Bean()
+        ''')
+
+        then:
+        MultipleCompilationErrorsException e = thrown(MultipleCompilationErrorsException)
+        e.message.contains("Named parameter ':lastnme'")
+        e.message.contains("Argument 'lastname'")
+    }
+
+    def '@Sql2oRowMapped generates a row mapper'() {
+        given:
+        GroovyShell shell = new GroovyShell()
+        ResultSet resultSet = [
+            getLong  : { int column -> 42L },
+            getString: { int column -> column == 2 ? 'Andres' : null }
+        ] as ResultSet
+
+        when:
+        Class type = shell.evaluate('''
+        @griffon.transform.sql2o.Sql2oRowMapped
+        class Person {
+            long id
+            String name
+            String lastname
+        }
+        Person
+        ''')
+        Sql2oRowMapper mapper = new Sql2oRowMappers().findRowMapper(type)
+        def person = mapper.map(resultSet, [1, 2, 0] as int[], new NoQuirks())
+
+        then:
+        mapper.class.name == 'Person$Sql2oRowMapper'
+        mapper.propertyNames == ['id', 'name', 'lastname']
+        person.id == 42L
+        person.name == 'Andres'
+        person.lastname == null
+    }
+
+    def 'Classes without a no-args constructor can not be @Sql2oRowMapped'() {
+        given:
+        GroovyShell shell = new GroovyShell()
+
+        when:
+        shell.evaluate('''
+        @griffon.transform.sql2o.Sql2oRowMapped
+        class Person {
+            final String name
+            Person(String name) { this.name = name }
+        }
+        Person
+        ''')
+
+        then:
+        MultipleCompilationErrorsException e = thrown(MultipleCompilationErrorsException)
+        e.message.contains('must have a no-args constructor')
+    }
 }